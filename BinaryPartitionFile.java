@@ -0,0 +1,261 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.samples.pagerank;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+ * Binary partition file, the on-disk image of a UrlAdjacency. Mappers map
+ * it with FileChannel.map and bulk copy the sections into the CSR arrays,
+ * so loading a partition costs page faults rather than text parsing. All
+ * values are little endian.
+ *
+ *   header   int magic, int version, int flags, int numRows, int numEdges,
+ *            long targetsLength (bytes of the targets section), 1 reserved
+ *   urls     int[numRows]        global index of each row
+ *   offsets  int[numRows + 1]    CSR row offsets into the targets
+ *   targets  int[numEdges], or with FLAG_VARINT_TARGETS the out-links of
+ *            each row as zig-zag varint deltas from the previous out-link
+ */
+
+public class BinaryPartitionFile {
+
+	public static final int MAGIC = 0x32425250; // "PRB2" read little endian
+	public static final int VERSION = 1;
+	public static final int FLAG_VARINT_TARGETS = 1;
+	public static final int HEADER_SIZE = 32;
+
+	// mapped windows stay well below the 2GB limit of a single mapping
+	private static final long MAP_WINDOW = 1L << 28;
+	private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+	public static boolean isBinaryPartition(String fileName) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		try {
+			if (file.length() < HEADER_SIZE) {
+				return false;
+			}
+			return Integer.reverseBytes(file.readInt()) == MAGIC;
+		} finally {
+			file.close();
+		}
+	}
+
+	public static UrlAdjacency read(String fileName) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			if (header.getInt() != MAGIC) {
+				throw new IOException(fileName + " is not a binary partition file");
+			}
+			int version = header.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported partition file version "
+						+ version + " in " + fileName);
+			}
+			int flags = header.getInt();
+			int numRows = header.getInt();
+			int numEdges = header.getInt();
+			long targetsLength = header.getLong();
+
+			long position = HEADER_SIZE;
+			int[] urls = new int[numRows];
+			position = readInts(channel, position, urls);
+			int[] offsets = new int[numRows + 1];
+			position = readInts(channel, position, offsets);
+			int[] targets = new int[numEdges];
+			if ((flags & FLAG_VARINT_TARGETS) != 0) {
+				readVarintTargets(channel, position, targetsLength, offsets,
+						targets);
+			} else {
+				readInts(channel, position, targets);
+			}
+			UrlAdjacency adjacency = new UrlAdjacency(urls, offsets, targets);
+			adjacency.finish();
+			return adjacency;
+		} finally {
+			file.close();
+		}
+	}
+
+	// bulk copy a section of little endian ints, returns the end position
+	private static long readInts(FileChannel channel, long position, int[] dst)
+			throws IOException {
+		int done = 0;
+		while (done < dst.length) {
+			int count = (int) Math.min(dst.length - done, MAP_WINDOW / 4);
+			MappedByteBuffer window = channel.map(
+					FileChannel.MapMode.READ_ONLY, position, (long) count * 4);
+			window.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(dst, done,
+					count);
+			done += count;
+			position += (long) count * 4;
+		}
+		return position;
+	}
+
+	private static void readVarintTargets(FileChannel channel, long position,
+			long length, int[] offsets, int[] targets) throws IOException {
+		long end = position + length;
+		ByteBuffer window = null;
+		int row = 0;
+		int previous = 0;
+		for (int i = 0; i < targets.length; i++) {
+			while (offsets[row + 1] <= i) {
+				row++;
+				previous = 0;
+			}
+			// remap when a varint (at most 5 bytes) could straddle the window
+			if (window == null || window.remaining() < 5) {
+				if (window != null) {
+					position += window.position();
+				}
+				window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+						Math.min(MAP_WINDOW, end - position));
+			}
+			int shift = 0;
+			int bits = 0;
+			byte b;
+			do {
+				b = window.get();
+				bits |= (b & 0x7f) << shift;
+				shift += 7;
+			} while (b < 0);
+			previous += (bits >>> 1) ^ -(bits & 1);
+			targets[i] = previous;
+		}
+	}
+
+	public static void write(UrlAdjacency adjacency, String fileName,
+			boolean varintTargets) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+		try {
+			file.setLength(0);
+			FileChannel channel = file.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			buffer.position(HEADER_SIZE); // header is written last
+			writeInts(channel, buffer, adjacency.urls, adjacency.numRows);
+			writeInts(channel, buffer, adjacency.offsets, adjacency.numRows + 1);
+			long targetsStart = channel.position() + buffer.position();
+			if (varintTargets) {
+				writeVarintTargets(channel, buffer, adjacency);
+			} else {
+				writeInts(channel, buffer, adjacency.targets, adjacency.numEdges);
+			}
+			flush(channel, buffer);
+			long targetsLength = channel.position() - targetsStart;
+
+			buffer.clear();
+			buffer.putInt(MAGIC).putInt(VERSION);
+			buffer.putInt(varintTargets ? FLAG_VARINT_TARGETS : 0);
+			buffer.putInt(adjacency.numRows).putInt(adjacency.numEdges);
+			buffer.putLong(targetsLength);
+			buffer.putInt(0);
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer, buffer.position());
+			}
+		} finally {
+			file.close();
+		}
+	}
+
+	private static void writeInts(FileChannel channel, ByteBuffer buffer,
+			int[] src, int length) throws IOException {
+		for (int i = 0; i < length; i++) {
+			if (buffer.remaining() < 4) {
+				flush(channel, buffer);
+			}
+			buffer.putInt(src[i]);
+		}
+	}
+
+	private static void writeVarintTargets(FileChannel channel,
+			ByteBuffer buffer, UrlAdjacency adjacency) throws IOException {
+		int[] offsets = adjacency.offsets;
+		int[] targets = adjacency.targets;
+		for (int row = 0; row < adjacency.numRows; row++) {
+			int previous = 0;
+			for (int i = offsets[row]; i < offsets[row + 1]; i++) {
+				if (buffer.remaining() < 5) {
+					flush(channel, buffer);
+				}
+				int delta = targets[i] - previous;
+				int bits = (delta << 1) ^ (delta >> 31);
+				while ((bits & ~0x7f) != 0) {
+					buffer.put((byte) ((bits & 0x7f) | 0x80));
+					bits >>>= 7;
+				}
+				buffer.put((byte) bits);
+				previous = targets[i];
+			}
+		}
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer)
+			throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
@@ -0,0 +1,228 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+package cgl.imr.samples.pagerank;
+
+import cgl.imr.base.SerializationException;
+
+/*
+ * Fast LZ77 block compressor in the style of LZ4: a single hash table of
+ * recent 4-byte sequences, greedy matching and byte-aligned sequences of
+ *
+ *   token (literal length << 4 | match length - 4), [literal length 255s],
+ *   literals, match offset (2 bytes little endian), [match length 255s]
+ *
+ * The last sequence has only literals. The search skips ahead faster the
+ * longer it goes without a match, so incompressible input costs little
+ * more than a copy. Only the blocks of RankCodec are compressed with it.
+ */
+
+public class BlockCompressor {
+
+	private static final int MIN_MATCH = 4;
+	private static final int HASH_LOG = 14;
+	private static final int MAX_OFFSET = 65535;
+	private static final int LAST_LITERALS = 5; // never part of a match
+	private static final int MATCH_FIND_LIMIT = 12; // no match starts closer to the end
+
+	public static int maxCompressedLength(int length) {
+		return length + length / 255 + 16;
+	}
+
+	/*
+	 * Compress src[srcOffset .. srcOffset + length) into dst from dstOffset,
+	 * which must have maxCompressedLength(length) bytes of room.
+	 * 
+	 * @return the end of the compressed block in dst
+	 */
+	public static int compress(byte[] src, int srcOffset, int length,
+			byte[] dst, int dstOffset) {
+		int end = srcOffset + length;
+		int matchLimit = end - MATCH_FIND_LIMIT;
+		int anchor = srcOffset;
+		int ip = srcOffset;
+		int op = dstOffset;
+		// position + 1 of the last sequence with each hash, 0 when none
+		int[] table = new int[1 << HASH_LOG];
+		while (ip < matchLimit) {
+			int sequence = readInt(src, ip);
+			int hash = (sequence * -1640531535) >>> (32 - HASH_LOG);
+			int ref = table[hash] - 1;
+			table[hash] = ip + 1;
+			if (ref < 0 || ip - ref > MAX_OFFSET
+					|| readInt(src, ref) != sequence) {
+				ip += 1 + ((ip - anchor) >>> 6);
+				continue;
+			}
+			while (ip > anchor && ref > srcOffset
+					&& src[ip - 1] == src[ref - 1]) {
+				ip--;
+				ref--;
+			}
+			int matchLength = MIN_MATCH;
+			int matchEnd = end - LAST_LITERALS;
+			while (ip + matchLength < matchEnd
+					&& src[ip + matchLength] == src[ref + matchLength]) {
+				matchLength++;
+			}
+			op = writeSequence(src, anchor, ip - anchor, dst, op, ip - ref,
+					matchLength);
+			ip += matchLength;
+			anchor = ip;
+		}
+		return writeSequence(src, anchor, end - anchor, dst, op, 0, 0);
+	}
+
+	/*
+	 * Decompress the block src[srcOffset .. srcOffset + length) into exactly
+	 * dstLength bytes of dst from dstOffset.
+	 */
+	public static void decompress(byte[] src, int srcOffset, int length,
+			byte[] dst, int dstOffset, int dstLength)
+			throws SerializationException {
+		int ip = srcOffset;
+		int end = srcOffset + length;
+		int op = dstOffset;
+		int dstEnd = dstOffset + dstLength;
+		try {
+			while (ip < end) {
+				int token = src[ip++] & 0xff;
+				int literalLength = token >>> 4;
+				if (literalLength == 15) {
+					int b;
+					do {
+						b = src[ip++] & 0xff;
+						literalLength += b;
+					} while (b == 255);
+				}
+				if (op + literalLength > dstEnd) {
+					throw new SerializationException("Corrupt compressed block");
+				}
+				System.arraycopy(src, ip, dst, op, literalLength);
+				ip += literalLength;
+				op += literalLength;
+				if (ip == end) {
+					break;
+				}
+				int offset = (src[ip] & 0xff) | ((src[ip + 1] & 0xff) << 8);
+				ip += 2;
+				int matchLength = token & 15;
+				if (matchLength == 15) {
+					int b;
+					do {
+						b = src[ip++] & 0xff;
+						matchLength += b;
+					} while (b == 255);
+				}
+				matchLength += MIN_MATCH;
+				int ref = op - offset;
+				if (offset == 0 || ref < dstOffset || op + matchLength > dstEnd) {
+					throw new SerializationException("Corrupt compressed block");
+				}
+				// byte by byte, the match may overlap what it produces
+				for (int i = 0; i < matchLength; i++) {
+					dst[op + i] = dst[ref + i];
+				}
+				op += matchLength;
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new SerializationException("Corrupt compressed block");
+		}
+		if (op != dstEnd) {
+			throw new SerializationException("Compressed block decodes to "
+					+ (op - dstOffset) + " bytes, expected " + dstLength);
+		}
+	}
+
+	// a sequence of literals followed by a match, or only literals when
+	// matchLength is 0
+	private static int writeSequence(byte[] src, int literals,
+			int literalLength, byte[] dst, int op, int offset, int matchLength) {
+		int token = op++;
+		int tokenValue;
+		if (literalLength >= 15) {
+			tokenValue = 15 << 4;
+			op = writeLength(dst, op, literalLength - 15);
+		} else {
+			tokenValue = literalLength << 4;
+		}
+		System.arraycopy(src, literals, dst, op, literalLength);
+		op += literalLength;
+		if (matchLength > 0) {
+			dst[op++] = (byte) offset;
+			dst[op++] = (byte) (offset >>> 8);
+			int length = matchLength - MIN_MATCH;
+			if (length >= 15) {
+				tokenValue |= 15;
+				op = writeLength(dst, op, length - 15);
+			} else {
+				tokenValue |= length;
+			}
+		}
+		dst[token] = (byte) tokenValue;
+		return op;
+	}
+
+	private static int writeLength(byte[] dst, int op, int length) {
+		while (length >= 255) {
+			dst[op++] = (byte) 255;
+			length -= 255;
+		}
+		dst[op++] = (byte) length;
+		return op;
+	}
+
+	private static int readInt(byte[] bytes, int position) {
+		return (bytes[position] & 0xff) | ((bytes[position + 1] & 0xff) << 8)
+				| ((bytes[position + 2] & 0xff) << 16)
+				| ((bytes[position + 3] & 0xff) << 24);
+	}
+}
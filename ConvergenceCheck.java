@@ -0,0 +1,251 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+package cgl.imr.samples.pagerank;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/*
+ * Stopping rule of the driver. One pass over the previous and the new rank
+ * vector, split into url ranges on the shared pool, gathers the L1, L2 and
+ * L-infinity norms of the change, the same norms of the new vector and
+ * the top k urls of the new vector. The partial sums are added in range
+ * order, so the norms do not depend on the scheduling. The combiner can
+ * make the same pass while it finalises the ranks and hand over its
+ * Residuals instead.
+ *
+ * The iterations stop when the chosen norm of the change (relative to the
+ * same norm of the new vector with converge.relative) drops below the
+ * tolerance, when the order of the top k urls has stayed the same for
+ * converge.topk.iterations iterations in a row, or at the iteration cap,
+ * whichever comes first.
+ */
+
+public class ConvergenceCheck {
+
+	public static final String L1 = "l1";
+	public static final String L2 = "l2";
+	public static final String L2_SQUARED = "l2sq";
+	public static final String LINF = "linf";
+
+	// urls per range of the pass, so small vectors do not fork at all
+	private static final int RANGE_SIZE = 1 << 16;
+
+	private final String norm;
+	private final boolean relative;
+	private final double tolerance;
+	private final int topK;
+	private final int topKIterations;
+	private final int maxIterations;
+
+	private double l1, l2, linf, rankL1, rankL2, rankLinf; // of the last update
+	private double error;
+	private int[] topUrls;
+	private int topKStable; // iterations the top k order has not changed
+	private int iterations;
+
+	public ConvergenceCheck(Map<String, String> options) {
+		norm = PageRankOptions.getString(options,
+				PageRankOptions.CONVERGE_NORM, L2_SQUARED);
+		if (!norm.equals(L1) && !norm.equals(L2) && !norm.equals(L2_SQUARED)
+				&& !norm.equals(LINF)) {
+			throw new IllegalArgumentException("Unknown norm " + norm);
+		}
+		relative = PageRankOptions.getBoolean(options,
+				PageRankOptions.CONVERGE_RELATIVE, false);
+		tolerance = PageRankOptions.getDouble(options,
+				PageRankOptions.CONVERGE_TOLERANCE, 1E-8);
+		topK = PageRankOptions.getInt(options, PageRankOptions.CONVERGE_TOPK,
+				0);
+		topKIterations = PageRankOptions.getInt(options,
+				PageRankOptions.CONVERGE_TOPK_ITERATIONS, 3);
+		maxIterations = PageRankOptions.getInt(options,
+				PageRankOptions.CONVERGE_MAX_ITERATIONS, 0);
+	}
+
+	/*
+	 * The measures of one url range: the sums (and maxima) of the change and
+	 * of the ranks, and the top k urls. A range may be added in several
+	 * pieces, in url order.
+	 */
+	public static class Residual {
+		double l1, l2Squared, linf, rankL1, rankL2Squared, rankLinf;
+		final TopKSelector top;
+
+		public Residual(int topK) {
+			top = topK > 0 ? new TopKSelector(topK) : null;
+		}
+
+		public void add(double[] previous, double[] next, int from, int to) {
+			double dl1 = 0, dl2 = 0, dlinf = linf;
+			double rl1 = 0, rl2 = 0, rlinf = rankLinf;
+			for (int i = from; i < to; i++) {
+				double rank = next[i];
+				double change = Math.abs(rank - previous[i]);
+				dl1 += change;
+				dl2 += change * change;
+				dlinf = Math.max(dlinf, change);
+				rl1 += Math.abs(rank);
+				rl2 += rank * rank;
+				rlinf = Math.max(rlinf, Math.abs(rank));
+				if (top != null) {
+					top.offer(i, rank);
+				}
+			}
+			l1 += dl1;
+			l2Squared += dl2;
+			linf = dlinf;
+			rankL1 += rl1;
+			rankL2Squared += rl2;
+			rankLinf = rlinf;
+		}
+	}
+
+	/*
+	 * Measure the change from previous to next.
+	 * 
+	 * @return whether the iterations should stop
+	 */
+	public boolean update(final double[] previous, final double[] next) {
+		int length = next.length;
+		int numRanges = Math.max(1, Math.min(Runtime.getRuntime()
+				.availableProcessors(), length / RANGE_SIZE));
+		final Residual[] residuals = new Residual[numRanges];
+		ParallelRanges.run(length, numRanges, new ParallelRanges.Body() {
+			public void run(int range, int from, int to) {
+				Residual residual = new Residual(topK);
+				residual.add(previous, next, from, to);
+				residuals[range] = residual;
+			}
+		});
+		return update(residuals);
+	}
+
+	/*
+	 * Take the change measured elsewhere, e.g. by the combiner while it
+	 * finalised the ranks; the residuals cover consecutive url ranges.
+	 * 
+	 * @return whether the iterations should stop
+	 */
+	public boolean update(Residual[] residuals) {
+		double l2Squared = 0, rankL2Squared = 0;
+		l1 = linf = rankL1 = rankLinf = 0;
+		for (int r = 0; r < residuals.length; r++) {
+			Residual residual = residuals[r];
+			l1 += residual.l1;
+			l2Squared += residual.l2Squared;
+			linf = Math.max(linf, residual.linf);
+			rankL1 += residual.rankL1;
+			rankL2Squared += residual.rankL2Squared;
+			rankLinf = Math.max(rankLinf, residual.rankLinf);
+		}
+		l2 = Math.sqrt(l2Squared);
+		rankL2 = Math.sqrt(rankL2Squared);
+
+		iterations++;
+		if (norm.equals(L1)) {
+			error = relative ? l1 / rankL1 : l1;
+		} else if (norm.equals(L2)) {
+			error = relative ? l2 / rankL2 : l2;
+		} else if (norm.equals(L2_SQUARED)) {
+			error = relative ? l2Squared / rankL2Squared : l2Squared;
+		} else {
+			error = relative ? linf / rankLinf : linf;
+		}
+		boolean stop = error < tolerance;
+		if (topK > 0) {
+			TopKSelector top = new TopKSelector(topK);
+			for (int r = 0; r < residuals.length; r++) {
+				top.addAll(residuals[r].top);
+			}
+			top.sort();
+			int[] urls = top.urls();
+			topKStable = Arrays.equals(urls, topUrls) ? topKStable + 1 : 0;
+			topUrls = urls;
+			stop |= topKStable >= topKIterations;
+		}
+		return stop || (maxIterations > 0 && iterations >= maxIterations);
+	}
+
+	/*
+	 * Count an iteration whose change is not judged.
+	 * 
+	 * @return whether the iteration cap is reached
+	 */
+	public boolean skip() {
+		iterations++;
+		return maxIterations > 0 && iterations >= maxIterations;
+	}
+
+	// count the iterations a restarted job already ran towards the cap
+	public void resumeAt(int iterations) {
+		this.iterations = iterations;
+	}
+
+	// the chosen norm of the last change, the number compared to the tolerance
+	public double getError() {
+		return error;
+	}
+
+	// one line with every measure of the last update
+	public String report() {
+		StringBuilder line = new StringBuilder();
+		line.append("l1=").append(l1).append(" l2=").append(l2)
+				.append(" linf=").append(linf).append(" relative l2=")
+				.append(l2 / rankL2);
+		if (topK > 0) {
+			line.append(" top ").append(topK).append(" unchanged for ")
+					.append(topKStable).append(" iterations");
+		}
+		return line.toString();
+	}
+}
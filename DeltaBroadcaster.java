@@ -0,0 +1,123 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.samples.pagerank;
+
+import java.util.Arrays;
+
+/*
+ * Driver side of the delta broadcast mode. It tracks the rank vector as the
+ * map tasks currently hold it and, for each new vector, only sends the ranks
+ * that differ from that copy by more than the threshold after the uniform
+ * shift is applied. Because the comparison is always against the mappers'
+ * copy, skipped changes never accumulate beyond the threshold. Falls back to
+ * a FULL broadcast when the delta would not be smaller.
+ */
+
+public class DeltaBroadcaster {
+
+	private final int numUrls;
+	private final double threshold;
+	private final double[] mapperRanks; // the ranks as the mappers hold them
+	private double mapperUniform; // uniform term of the last broadcast
+
+	private int[] indices = new int[1024];
+	private double[] values = new double[1024];
+
+	public DeltaBroadcaster(int numUrls, double threshold) {
+		this.numUrls = numUrls;
+		this.threshold = threshold;
+		this.mapperRanks = new double[numUrls];
+		this.mapperUniform = 0.0;
+	}
+
+	/*
+	 * @parameter ranks - the rank vector to broadcast next
+	 * 
+	 * @parameter uniformRank - the part of every rank that comes from the
+	 * teleport and dangling term, (0.15 + 0.85 * danglingSum) / numUrls
+	 */
+	public RankBroadcast next(double[] ranks, double uniformRank) {
+		double shift = uniformRank - mapperUniform;
+		// a delta entry costs 12 bytes, a full rank 8
+		int maxEntries = (int) ((8L * numUrls) / 12);
+		int numEntries = 0;
+		for (int i = 0; i < numUrls; i++) {
+			double predicted = mapperRanks[i] + shift;
+			double rank = ranks[i];
+			if (Math.abs(rank - predicted) > threshold) {
+				if (numEntries == maxEntries) {
+					return full(ranks, uniformRank);
+				}
+				if (numEntries == indices.length) {
+					int length = Math.min(maxEntries, 2 * numEntries);
+					indices = Arrays.copyOf(indices, length);
+					values = Arrays.copyOf(values, length);
+				}
+				indices[numEntries] = i;
+				values[numEntries] = rank;
+				numEntries++;
+				mapperRanks[i] = rank;
+			} else {
+				mapperRanks[i] = predicted;
+			}
+		}
+		mapperUniform = uniformRank;
+		return RankBroadcast.delta(numUrls, shift, numEntries, indices, values);
+	}
+
+	private RankBroadcast full(double[] ranks, double uniformRank) {
+		System.arraycopy(ranks, 0, mapperRanks, 0, numUrls);
+		mapperUniform = uniformRank;
+		return RankBroadcast.full(ranks, uniformRank);
+	}
+}
@@ -0,0 +1,308 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+package cgl.imr.samples.pagerank;
+
+import java.math.BigInteger;
+
+/*
+ * Formats doubles as ASCII straight into a byte array, for the text output
+ * (see RankOutputWriter). A double is written in the notation of
+ * Double.toString() with the shortest decimal that reads back to the same
+ * double, the closest one to it if there are several. Old JDKs print a few
+ * doubles with a digit more than needed; those come out shorter here, and
+ * every one parses back exactly.
+ *
+ * The digits are found with the Schubfach algorithm of Raffaello Giulietti,
+ * the one Double.toString() uses since JDK 19: the double and the bounds
+ * of its rounding interval are scaled by a 126-bit approximation of a power
+ * of ten into fixed point numbers whose integer parts are the candidate
+ * decimals, which takes a few long multiplications instead of the
+ * FloatingDecimal big number arithmetic of older JDKs. The powers of ten
+ * are computed with BigInteger when the class is loaded.
+ *
+ * A formatter keeps the digits of the double being written, so every
+ * thread needs its own.
+ */
+
+public class DoubleFormatter {
+
+	public static final int MAX_LENGTH = 24; // "-2.2250738585072014E-308"
+
+	private static final int Q_MIN = -1074; // exponent of the smallest subnormal
+	private static final int P = 53; // bits of the significand
+	private static final long C_MIN = 1L << (P - 1);
+	private static final long C_TINY = 3; // subnormals below this get a digit more
+	private static final long T_MASK = C_MIN - 1;
+	private static final int BQ_MASK = 0x7ff;
+	private static final long MASK_63 = (1L << 63) - 1;
+	private static final int K_MIN = -324;
+	private static final int K_MAX = 292;
+
+	// g1 and g0 of k: the upper and lower 63 bits of floor(10^-k 2^(125 -
+	// flog2pow10(-k))) + 1, an over approximation of 10^-k
+	private static final long[] G = new long[2 * (K_MAX - K_MIN + 1)];
+
+	static {
+		BigInteger mask = BigInteger.ONE.shiftLeft(63).subtract(BigInteger.ONE);
+		for (int k = K_MIN; k <= K_MAX; k++) {
+			int shift = 125 - flog2pow10(-k);
+			BigInteger numerator = BigInteger.TEN.pow(Math.max(-k, 0));
+			BigInteger denominator = BigInteger.TEN.pow(Math.max(k, 0));
+			if (shift >= 0) {
+				numerator = numerator.shiftLeft(shift);
+			} else {
+				denominator = denominator.shiftLeft(-shift);
+			}
+			BigInteger g = numerator.divide(denominator).add(BigInteger.ONE);
+			G[2 * (k - K_MIN)] = g.shiftRight(63).longValue();
+			G[2 * (k - K_MIN) + 1] = g.and(mask).longValue();
+		}
+	}
+
+	private final byte[] digits = new byte[20];
+	private long f; // the decimal is f * 10^e
+	private int e;
+
+	/*
+	 * Write value at bytes[position ..], which must have room for
+	 * MAX_LENGTH bytes.
+	 * 
+	 * @return the position after the last byte written
+	 */
+	public int format(double value, byte[] bytes, int position) {
+		long bits = Double.doubleToRawLongBits(value);
+		long t = bits & T_MASK;
+		int bq = (int) (bits >>> (P - 1)) & BQ_MASK;
+		if (bq == BQ_MASK) {
+			return ascii(t != 0 ? "NaN" : bits < 0 ? "-Infinity" : "Infinity",
+					bytes, position);
+		}
+		if (bits < 0) {
+			bytes[position++] = '-';
+		}
+		if (bq != 0) {
+			int mq = -Q_MIN + 1 - bq;
+			long c = C_MIN | t;
+			if (0 < mq && mq < P && (c >> mq) << mq == c) {
+				f = c >> mq; // an integer
+				e = 0;
+			} else {
+				toDecimal(-mq, c, 0);
+			}
+		} else if (t != 0) {
+			if (t < C_TINY) {
+				toDecimal(Q_MIN, 10 * t, -1);
+			} else {
+				toDecimal(Q_MIN, t, 0);
+			}
+		} else {
+			return ascii("0.0", bytes, position);
+		}
+		return render(bytes, position);
+	}
+
+	// the shortest decimal f * 10^e in the rounding interval of c * 2^q
+	private void toDecimal(int q, long c, int dk) {
+		int out = (int) c & 1; // the bounds belong to the interval for even c
+		long cb = c << 2;
+		long cbr = cb + 2;
+		long cbl;
+		int k;
+		if (c != C_MIN || q == Q_MIN) {
+			cbl = cb - 2;
+			k = flog10pow2(q);
+		} else {
+			// the interval below a power of two is half as wide
+			cbl = cb - 1;
+			k = flog10ThreeQuartersPow2(q);
+		}
+		int h = q + flog2pow10(-k) + 2;
+		long g1 = G[2 * (k - K_MIN)];
+		long g0 = G[2 * (k - K_MIN) + 1];
+		long vb = roundToOdd(g1, g0, cb << h);
+		long vbl = roundToOdd(g1, g0, cbl << h);
+		long vbr = roundToOdd(g1, g0, cbr << h);
+
+		long s = vb >> 2;
+		if (s >= 100) {
+			// prefer a decimal with one digit less when there is one
+			long sp10 = s / 10 * 10;
+			long tp10 = sp10 + 10;
+			boolean upin = vbl + out <= sp10 << 2;
+			boolean wpin = (tp10 << 2) + out <= vbr;
+			if (upin != wpin) {
+				f = upin ? sp10 : tp10;
+				e = k;
+				return;
+			}
+		}
+		long t = s + 1;
+		boolean uin = vbl + out <= s << 2;
+		boolean win = (t << 2) + out <= vbr;
+		e = k + dk;
+		if (uin != win) {
+			f = uin ? s : t;
+			return;
+		}
+		// both or neither in the interval: the closer one, the even one on a tie
+		long cmp = vb - ((s + t) << 1);
+		f = cmp < 0 || cmp == 0 && (s & 1) == 0 ? s : t;
+	}
+
+	// f * 10^e as Double.toString() lays it out
+	private int render(byte[] bytes, int position) {
+		while (f % 10 == 0) {
+			f /= 10;
+			e++;
+		}
+		int length = 0;
+		for (long rest = f; rest > 0; rest /= 10) {
+			digits[length++] = (byte) ('0' + rest % 10); // reversed
+		}
+		int exponent = e + length - 1; // of the first digit
+		if (exponent >= -3 && exponent < 7) {
+			if (exponent < 0) {
+				bytes[position++] = '0';
+				bytes[position++] = '.';
+				for (int i = -1; i > exponent; i--) {
+					bytes[position++] = '0';
+				}
+				for (int i = length - 1; i >= 0; i--) {
+					bytes[position++] = digits[i];
+				}
+				return position;
+			}
+			int i = length - 1;
+			for (int d = 0; d <= exponent; d++) {
+				bytes[position++] = i >= 0 ? digits[i--] : (byte) '0';
+			}
+			bytes[position++] = '.';
+			if (i < 0) {
+				bytes[position++] = '0';
+			}
+			for (; i >= 0; i--) {
+				bytes[position++] = digits[i];
+			}
+			return position;
+		}
+		bytes[position++] = digits[length - 1];
+		bytes[position++] = '.';
+		if (length == 1) {
+			bytes[position++] = '0';
+		}
+		for (int i = length - 2; i >= 0; i--) {
+			bytes[position++] = digits[i];
+		}
+		bytes[position++] = 'E';
+		if (exponent < 0) {
+			bytes[position++] = '-';
+			exponent = -exponent;
+		}
+		if (exponent >= 100) {
+			bytes[position++] = (byte) ('0' + exponent / 100);
+		}
+		if (exponent >= 10) {
+			bytes[position++] = (byte) ('0' + exponent / 10 % 10);
+		}
+		bytes[position++] = (byte) ('0' + exponent % 10);
+		return position;
+	}
+
+	/*
+	 * The 126-bit g = g1 2^63 + g0 times cp, shifted right by 127 bits,
+	 * with the lowest bit set when any bit shifted out was set.
+	 */
+	private static long roundToOdd(long g1, long g0, long cp) {
+		long x1 = multiplyHigh(g0, cp);
+		long y0 = g1 * cp;
+		long y1 = multiplyHigh(g1, cp);
+		long z = (y0 >>> 1) + x1;
+		long vbp = y1 + (z >>> 63);
+		return vbp | ((z & MASK_63) + MASK_63) >>> 63;
+	}
+
+	// the upper 64 bits of the 128-bit product, Math.multiplyHigh of Java 9
+	private static long multiplyHigh(long x, long y) {
+		long x1 = x >> 32;
+		long x2 = x & 0xFFFFFFFFL;
+		long y1 = y >> 32;
+		long y2 = y & 0xFFFFFFFFL;
+		long z2 = x2 * y2;
+		long t = x1 * y2 + (z2 >>> 32);
+		long z1 = t & 0xFFFFFFFFL;
+		long z0 = t >> 32;
+		z1 += x2 * y1;
+		return x1 * y1 + z0 + (z1 >> 32);
+	}
+
+	// floor(q log10(2))
+	private static int flog10pow2(int q) {
+		return (int) (q * 661971961083L >> 41);
+	}
+
+	// floor(log10(3/4 2^q))
+	private static int flog10ThreeQuartersPow2(int q) {
+		return (int) (q * 661971961083L - 274743187321L >> 41);
+	}
+
+	// floor(e log2(10))
+	private static int flog2pow10(int e) {
+		return (int) (e * 913124641741L >> 38);
+	}
+
+	private static int ascii(String text, byte[] bytes, int position) {
+		for (int i = 0; i < text.length(); i++) {
+			bytes[position++] = (byte) text.charAt(i);
+		}
+		return position;
+	}
+}
@@ -0,0 +1,210 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.samples.pagerank;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Writes a random graph in the text adjacency format, split into contiguous
+ * partitions, so that the options of PageRank2 can be compared on the same
+ * graph from run to run. The graph only depends on the arguments:
+ * 
+ *   seed=<n>        random seed, default 1
+ *   locality=<f>    fraction of the links that stay inside the partition of
+ *                   their url, default 0 (targets uniform over all urls)
+ *   dangling=<f>    fraction of urls without out-links, default 0.1
+ *   maxdegree=<n>   out-degrees are uniform in 1..maxdegree, default 6
+ *   delta=<n>       also write n link changes to delta.txt for graph.delta,
+ *                   half of them new links and half removed ones
+ * 
+ * The output directory gets part<i>.txt for each partition and
+ * partitions.txt, the partition file that lists them.
+ */
+
+public class GraphGenerator {
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			String errorReport = "GraphGenerator: the Correct arguments are \n"
+					+ "java cgl.imr.samples.pagerank.GraphGenerator "
+					+ "[num urls][num partitions][output directory]"
+					+ "[seed=|locality=|dangling=|maxdegree=|delta=, optional]";
+			System.out.println(errorReport);
+			System.exit(0);
+		}
+		int numUrls = Integer.parseInt(args[0]);
+		int numParts = Integer.parseInt(args[1]);
+		File dir = new File(args[2]);
+		Map<String, String> options = PageRankOptions.parse(args, 3);
+		Random random = new Random(PageRankOptions.getInt(options, "seed", 1));
+		double locality = PageRankOptions.getDouble(options, "locality", 0);
+		double dangling = PageRankOptions.getDouble(options, "dangling", 0.1);
+		int maxDegree = PageRankOptions.getInt(options, "maxdegree", 6);
+		int numChanges = PageRankOptions.getInt(options, "delta", 0);
+
+		int[] partStarts = ParallelRanges.split(numUrls, numParts);
+		int[][] links = new int[numUrls][];
+		int part = 0;
+		for (int url = 0; url < numUrls; url++) {
+			while (url >= partStarts[part + 1]) {
+				part++;
+			}
+			if (random.nextDouble() < dangling) {
+				links[url] = new int[0];
+				continue;
+			}
+			int degree = 1 + random.nextInt(maxDegree);
+			int[] targets = new int[degree];
+			int count = 0;
+			while (count < degree) {
+				int target = random.nextDouble() < locality ? partStarts[part]
+						+ random.nextInt(partStarts[part + 1] - partStarts[part])
+						: random.nextInt(numUrls);
+				if (indexOf(targets, count, target) < 0) {
+					targets[count++] = target;
+				}
+			}
+			links[url] = targets;
+		}
+
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Cannot create " + dir);
+		}
+		BufferedWriter partitions = new BufferedWriter(new FileWriter(new File(
+				dir, "partitions.txt")));
+		try {
+			for (int p = 0; p < numParts; p++) {
+				File file = new File(dir, "part" + p + ".txt");
+				writePartition(file, links, partStarts[p], partStarts[p + 1]);
+				partitions.write(file.getPath());
+				partitions.newLine();
+			}
+		} finally {
+			partitions.close();
+		}
+		if (numChanges > 0) {
+			writeDelta(new File(dir, "delta.txt"), links, numChanges, random);
+		}
+		System.out.println("[log] Wrote " + numUrls + " urls in " + numParts
+				+ " partitions to " + dir);
+		System.exit(0);
+	}
+
+	private static void writePartition(File file, int[][] links, int from,
+			int to) throws IOException {
+		BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+		try {
+			writer.write(Integer.toString(to - from));
+			writer.newLine();
+			for (int url = from; url < to; url++) {
+				writer.write(Integer.toString(url));
+				for (int i = 0; i < links[url].length; i++) {
+					writer.write(' ');
+					writer.write(Integer.toString(links[url][i]));
+				}
+				writer.newLine();
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	/*
+	 * Every change touches a url no earlier change touched: either a new
+	 * link to a url it does not link to yet, or the removal of one of its
+	 * links. The changes never conflict, in whatever order they are applied.
+	 */
+	private static void writeDelta(File file, int[][] links, int numChanges,
+			Random random) throws IOException {
+		int numUrls = links.length;
+		boolean[] changed = new boolean[numUrls];
+		BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+		try {
+			for (int c = 0; c < Math.min(numChanges, numUrls); c++) {
+				int url;
+				do {
+					url = random.nextInt(numUrls);
+				} while (changed[url]);
+				changed[url] = true;
+				int[] targets = links[url];
+				if (c % 2 == 1 && targets.length > 0) {
+					writer.write("- " + url + " "
+							+ targets[random.nextInt(targets.length)]);
+				} else {
+					int target;
+					do {
+						target = random.nextInt(numUrls);
+					} while (indexOf(targets, targets.length, target) >= 0);
+					writer.write("+ " + url + " " + target);
+				}
+				writer.newLine();
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static int indexOf(int[] values, int length, int value) {
+		for (int i = 0; i < length; i++) {
+			if (values[i] == value) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
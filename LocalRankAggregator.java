@@ -0,0 +1,198 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+package cgl.imr.samples.pagerank;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Sums the partial rank vectors of all the map tasks of one job that run in
+ * the same JVM (the same Twister daemon), so the daemon ships one vector per
+ * iteration instead of one per map task. Map tasks register in configure();
+ * every iteration each adds its partial ranks and the last one to arrive
+ * gets the total to emit, the others emit nothing.
+ *
+ * The sum belongs to one iteration, the one stamped on the broadcast (see
+ * BroadcastStamp). A map task adding twice in one iteration, as a task
+ * executed again after it failed would, is refused rather than counted
+ * twice, and an iteration starting while the previous one still waits for
+ * some of the tasks fails instead of leaving the daemon's sum unsent.
+ *
+ * The sum is cut into url stripes, each with its own lock, and each map
+ * task starts at a different stripe, so tasks finishing together mostly add
+ * into different parts of the vector. Only the urls a task's partition links
+ * to are added. The order in which the tasks arrive decides the order of
+ * the additions, so the last bits of the ranks can differ between runs.
+ */
+
+public class LocalRankAggregator {
+
+	private static final int NUM_STRIPES = 64;
+
+	private static final Map<String, LocalRankAggregator> aggregators = new HashMap<String, LocalRankAggregator>();
+
+	private final String jobId;
+	private int numTasks; // registered map tasks
+	private int iteration = -1; // iteration of the sum
+	// map tasks that started adding their ranks this iteration
+	private final Set<Integer> arrivedTasks = new HashSet<Integer>();
+	private int numArrived; // map tasks that added their ranks this iteration
+	private double[] sum;
+	private double danglingValSum;
+	private int[] stripeUrls; // first url of each stripe
+	private final Object[] stripeLocks = new Object[NUM_STRIPES];
+
+	private LocalRankAggregator(String jobId) {
+		this.jobId = jobId;
+		for (int s = 0; s < NUM_STRIPES; s++) {
+			stripeLocks[s] = new Object();
+		}
+	}
+
+	// the aggregator of the job, counting the caller as one more map task
+	public static LocalRankAggregator register(String jobId) {
+		synchronized (aggregators) {
+			LocalRankAggregator aggregator = aggregators.get(jobId);
+			if (aggregator == null) {
+				aggregator = new LocalRankAggregator(jobId);
+				aggregators.put(jobId, aggregator);
+			}
+			synchronized (aggregator) {
+				aggregator.numTasks++;
+			}
+			return aggregator;
+		}
+	}
+
+	public void unregister() {
+		synchronized (aggregators) {
+			synchronized (this) {
+				if (--numTasks == 0) {
+					aggregators.remove(jobId);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Add the partial ranks of map task taskNo for the given iteration.
+	 * linkedUrls (ascending) are the only urls that can be non-zero and the
+	 * task number spreads the tasks over the stripes.
+	 * 
+	 * @return the sum of all the local map tasks when the caller is the last
+	 * to arrive, to be emitted and then handed back through done(); null
+	 * otherwise.
+	 */
+	public RankVector add(RankVector partial, int[] linkedUrls, int taskNo,
+			int iteration) {
+		double[] sum;
+		synchronized (this) {
+			if (iteration != this.iteration) {
+				if (!arrivedTasks.isEmpty()) {
+					throw new IllegalStateException("Iteration " + iteration
+							+ " started while only " + numArrived + " of "
+							+ numTasks + " local map tasks finished iteration "
+							+ this.iteration);
+				}
+				this.iteration = iteration;
+			}
+			if (!arrivedTasks.add(taskNo)) {
+				throw new IllegalStateException("Map task " + taskNo
+						+ " added its ranks twice in iteration " + iteration);
+			}
+			if (this.sum == null || this.sum.length != partial.numUrls) {
+				this.sum = new double[partial.numUrls];
+				stripeUrls = ParallelRanges.split(partial.numUrls, NUM_STRIPES);
+			}
+			sum = this.sum;
+		}
+		double[] ranks = partial.ranks;
+		for (int i = 0; i < NUM_STRIPES; i++) {
+			int s = (taskNo + i) % NUM_STRIPES;
+			int from = firstLinked(linkedUrls, stripeUrls[s]);
+			int to = firstLinked(linkedUrls, stripeUrls[s + 1]);
+			if (from == to) {
+				continue;
+			}
+			synchronized (stripeLocks[s]) {
+				for (int j = from; j < to; j++) {
+					int url = linkedUrls[j];
+					sum[url] += ranks[url];
+				}
+			}
+		}
+		synchronized (this) {
+			danglingValSum += partial.danglingValSum;
+			if (++numArrived < numTasks) {
+				return null;
+			}
+			return new RankVector(sum, danglingValSum);
+		}
+	}
+
+	// clear the sum for the next iteration once the total has been emitted
+	public synchronized void done() {
+		Arrays.fill(sum, 0.0d);
+		danglingValSum = 0.0d;
+		arrivedTasks.clear();
+		numArrived = 0;
+	}
+
+	// first position in linkedUrls whose url is >= url
+	private static int firstLinked(int[] linkedUrls, int url) {
+		int position = Arrays.binarySearch(linkedUrls, url);
+		return position >= 0 ? position : -position - 1;
+	}
+}
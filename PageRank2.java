@@ -52,10 +52,13 @@
 
 package cgl.imr.samples.pagerank;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.safehaus.uuid.UUIDGenerator;
 
@@ -66,7 +69,6 @@ import cgl.imr.client.TwisterDriver;
 //import cgl.imr.monitor.TwisterMonitor;
 import cgl.imr.base.TwisterMonitor;
 import cgl.imr.types.BytesValue;
-import cgl.imr.types.DoubleVectorData;
 import cgl.imr.types.IntKey;
 
 /**
@@ -127,10 +129,79 @@ public class PageRank2 {
 		return keyValues;
 	}
 	public static void main(String[] args) throws Exception {
-		if (args.length != 5) {
+		if (args.length < 5) {
 			String errorReport = "PageRank: the Correct arguments are \n"
-					+ "java cgl.imr.samples.pagerank.PageRank "
-					+ "[num urls][num map tasks][num reduce tasks][partition file][output file]";
+					+ "java cgl.imr.samples.pagerank.PageRank2 "
+					+ "[num urls][num map tasks][num reduce tasks][partition file][output file]"
+					+ "[name=value options ...]\n"
+					+ "options: " + PageRankOptions.DELTA_BCAST_THRESHOLD
+					+ "=<min rank change to rebroadcast, 0 = full vector>\n"
+					+ "         " + PageRankOptions.MAP_THREADS
+					+ "=<threads per map task, default 1>\n"
+					+ "         " + PageRankOptions.MAP_KERNEL
+					+ "=<push|pull, default push>\n"
+					+ "         " + PageRankOptions.MERGE_THREADS
+					+ "=<threads per reduce task and combiner, default all cores>\n"
+					+ "         " + PageRankOptions.REDUCE_FAN_IN
+					+ "=<map tasks summed per reduce call, default 0 = all>\n"
+					+ "         " + PageRankOptions.REDUCE_STREAMING
+					+ "=<true|false, add reduce inputs one at a time, default true>\n"
+					+ "         " + PageRankOptions.MAP_LOCAL_AGGREGATION
+					+ "=<true|false, one vector per daemon, default false>\n"
+					+ "         " + PageRankOptions.CODEC
+					+ "=<none|auto|varint+lz4..., wire encoding, default none>\n"
+					+ "         " + PageRankOptions.CODEC_LOSSY
+					+ "=<none|float32|scaled, values while the error is large>\n"
+					+ "         " + PageRankOptions.CODEC_LOSSY_ERROR
+					+ "=<error above which values are lossy, default 1E-6>\n"
+					+ "         " + PageRankOptions.CODEC_BANDWIDTH
+					+ "=<MB/s the auto codec assumes, default 100>\n"
+					+ "         " + PageRankOptions.MAP_INNER_SWEEPS
+					+ "=<local Gauss-Seidel sweeps per map task, default 0>\n"
+					+ "         " + PageRankOptions.ADAPTIVE_THRESHOLD
+					+ "=<relative change below which urls freeze, default 0 = never>\n"
+					+ "         " + PageRankOptions.EXTRAPOLATION
+					+ "=<none|aitken|quadratic, default none>\n"
+					+ "         " + PageRankOptions.EXTRAPOLATION_INTERVAL
+					+ "=<iterations between extrapolations, default 10>\n"
+					+ "         " + PageRankOptions.CONVERGE_NORM
+					+ "=<l1|l2|l2sq|linf, norm of the change, default l2sq>\n"
+					+ "         " + PageRankOptions.CONVERGE_RELATIVE
+					+ "=<true|false, divide by the norm of the ranks, default false>\n"
+					+ "         " + PageRankOptions.CONVERGE_TOLERANCE
+					+ "=<stop below this error, default 1E-8>\n"
+					+ "         " + PageRankOptions.CONVERGE_TOPK
+					+ "=<also stop when the top k order is stable, default 0 = off>\n"
+					+ "         " + PageRankOptions.CONVERGE_TOPK_ITERATIONS
+					+ "=<iterations the top k must stay the same, default 3>\n"
+					+ "         " + PageRankOptions.CONVERGE_MAX_ITERATIONS
+					+ "=<iteration cap, default 0 = none>\n"
+					+ "         " + PageRankOptions.INIT_RANKS
+					+ "=<output or rank vector file of an earlier run to start from>\n"
+					+ "         " + PageRankOptions.CHECKPOINT_FILE
+					+ "=<file the ranks are checkpointed to, default none>\n"
+					+ "         " + PageRankOptions.CHECKPOINT_INTERVAL
+					+ "=<iterations between checkpoints, default 10>\n"
+					+ "         " + PageRankOptions.RESTART
+					+ "=<true|false, resume from the checkpoint file, default false>\n"
+					+ "         " + PageRankOptions.GRAPH_DELTA
+					+ "=<file of link changes to apply to the partitions>\n"
+					+ "         " + PageRankOptions.GRAPH_DELTA_INCREMENTAL
+					+ "=<true|false, propagate only their residual, default true>\n"
+					+ "         " + PageRankOptions.GRAPH_DELTA_TOLERANCE
+					+ "=<L1 residual to propagate down to, default 1E-8>\n"
+					+ "         " + PageRankOptions.GRAPH_DELTA_MAX_FRACTION
+					+ "=<fraction of urls that may change, default 0.1>\n"
+					+ "         " + PageRankOptions.GRAPH_DELTA_MAX_WORK
+					+ "=<full iterations of work to push for, default 2>\n"
+					+ "         " + PageRankOptions.OUTPUT_FORMAT
+					+ "=<text|binary, default text>\n"
+					+ "         " + PageRankOptions.OUTPUT_THREADS
+					+ "=<threads writing the output file, default 1>\n"
+					+ "         " + PageRankOptions.OUTPUT_TOPK
+					+ "=<write the top k urls to <output file>.top, default 0 = no>\n"
+					+ "         " + PageRankOptions.OUTPUT_TOPK_ONLY
+					+ "=<true|false, write only the top k urls, default false>";
 			System.out.println(errorReport);
 			System.exit(0);
 		}
@@ -139,10 +210,11 @@ public class PageRank2 {
 		int numReduceTasks = Integer.parseInt(args[2]);
 		String partitionFile = args[3];
 		String outputFile = args[4];
-		PageRank client;
+		Map<String, String> options = PageRankOptions.parse(args, 5);
+		PageRank2 client;
 		try {
-			client = new PageRank(numUrls, numMapTasks, numReduceTasks,
-					partitionFile, outputFile);
+			client = new PageRank2(numUrls, numMapTasks, numReduceTasks,
+					partitionFile, outputFile, options);
 			double beginTime = System.currentTimeMillis();
 			client.driveMapReduce();
 			double endTime = System.currentTimeMillis();
@@ -178,19 +250,46 @@ public class PageRank2 {
 
 	private String partitionFile;
 
+	private Map<String, String> options; // optional name=value settings
+
 	private UUIDGenerator uuidGen = UUIDGenerator.getInstance();
 
 	public PageRank2(int numUrls, int numMapTasks, int numReduceTasks,
 			String partitionFile, String outputFile) {
+		this(numUrls, numMapTasks, numReduceTasks, partitionFile, outputFile,
+				new HashMap<String, String>());
+	}
+
+	public PageRank2(int numUrls, int numMapTasks, int numReduceTasks,
+			String partitionFile, String outputFile, Map<String, String> options) {
 		this.numUrls = numUrls;
 		this.numMapTasks = numMapTasks;
 		this.partitionFile = partitionFile;
 		this.outputFile = outputFile;
 		this.numReduceTasks = numReduceTasks;
+		this.options = options;
 	}
 
 	public void driveMapReduce() throws Exception {
 		long beforeTime = System.currentTimeMillis();
+		// checked before the job rather than when the output is written
+		int outputTopK = PageRankOptions.getInt(this.options,
+				PageRankOptions.OUTPUT_TOPK, 0);
+		if (outputTopK < 0) {
+			throw new IllegalArgumentException(PageRankOptions.OUTPUT_TOPK
+					+ " must not be negative, got " + outputTopK);
+		}
+		// the sweeps read the inflow of a row off its broadcast rank, which
+		// a delta broadcast leaves stale
+		if (PageRankOptions.getInt(this.options,
+				PageRankOptions.MAP_INNER_SWEEPS, 0) > 0
+				&& PageRankOptions.getDouble(this.options,
+						PageRankOptions.DELTA_BCAST_THRESHOLD, 0) > 0) {
+			throw new IllegalArgumentException(
+					PageRankOptions.MAP_INNER_SWEEPS + " needs the full broadcast, "
+							+ "it cannot be used with "
+							+ PageRankOptions.DELTA_BCAST_THRESHOLD);
+		}
 
 		// JobConfigurations
 		JobConf jobConf = new JobConf("pagerank-map-reduce"
@@ -201,6 +300,7 @@ public class PageRank2 {
 		jobConf.setCombinerClass(PageRankCombiner2.class);
 		jobConf.setNumMapTasks(this.numMapTasks);
 		jobConf.setNumReduceTasks(this.numReduceTasks);
+		PageRankOptions.addToJobConf(this.options, jobConf);
 		//jobConf.setFaultTolerance();
 
 		TwisterDriver driver = new TwisterDriver(jobConf);
@@ -208,14 +308,128 @@ public class PageRank2 {
 		// divide the static input data for map tasks,
 		// input data is the adjacency matrix for urls
 
-		DoubleVectorData currDV;
-		DoubleVectorData newDV = new DoubleVectorData();
+		RankVector currRV;
+		RankVector newRV;
+
+		double[] initPageRanks = new double[this.numUrls];
+		Arrays.fill(initPageRanks, 1 / (double) this.numUrls);
+		currRV = new RankVector(initPageRanks, 0.0);
+		double uniformRank = 1 / (double) this.numUrls;
+		int loopCount = 0;
+
+		// warm start from the ranks of an earlier run. A rank vector file of
+		// the same urls also holds the dangling sum and uniform term that go
+		// with its ranks; without them the broadcast of the first iteration
+		// carries made-up ones, and its change is not judged
+		String initRanksFile = PageRankOptions.getString(this.options,
+				PageRankOptions.INIT_RANKS, null);
+		boolean judgeFirstIteration = true;
+		if (initRanksFile != null) {
+			RankVectorFile seed = loadInitialRanks(initRanksFile,
+					initPageRanks);
+			if (seed != null && seed.ranks.numUrls == this.numUrls) {
+				currRV.danglingValSum = seed.ranks.danglingValSum;
+				uniformRank = seed.uniformRank;
+			} else {
+				judgeFirstIteration = false;
+			}
+		}
+
+		// resume from the last checkpoint, or start writing new ones
+		String checkpointFile = PageRankOptions.getString(this.options,
+				PageRankOptions.CHECKPOINT_FILE, null);
+		Checkpointer checkpointer = null;
+		boolean restarted = false;
+		if (checkpointFile != null) {
+			if (PageRankOptions.getBoolean(this.options,
+					PageRankOptions.RESTART, false)
+					&& new File(checkpointFile).exists()) {
+				RankVectorFile checkpoint = RankVectorFile.read(checkpointFile);
+				if (checkpoint.ranks.numUrls != this.numUrls) {
+					throw new IOException(checkpointFile + " holds "
+							+ checkpoint.ranks.numUrls + " urls, expected "
+							+ this.numUrls);
+				}
+				currRV = checkpoint.ranks;
+				uniformRank = checkpoint.uniformRank;
+				loopCount = checkpoint.iteration;
+				restarted = true;
+				System.out.println("[log] Restarted from iteration " + loopCount
+						+ " of " + checkpointFile);
+			}
+			checkpointer = new Checkpointer(checkpointFile,
+					PageRankOptions.getInt(this.options,
+							PageRankOptions.CHECKPOINT_INTERVAL, 10));
+		}
+
+		// apply a batch of link changes and, from the ranks before them,
+		// propagate just the residual they cause instead of iterating
+		boolean complete = false;
+		String graphDeltaFile = PageRankOptions.getString(this.options,
+				PageRankOptions.GRAPH_DELTA, null);
+		if (graphDeltaFile != null) {
+			boolean incremental = initRanksFile != null
+					&& !restarted
+					&& PageRankOptions.getBoolean(this.options,
+							PageRankOptions.GRAPH_DELTA_INCREMENTAL, true);
+			complete = applyGraphDelta(driver, graphDeltaFile,
+					incremental ? currRV : null);
+			if (incremental) {
+				uniformRank = (.15 + .85 * currRV.danglingValSum)
+						/ this.numUrls;
+			}
+			// the dangling sum is only kept from a known one, the binary
+			// output needs it
+			if (complete && !judgeFirstIteration
+					&& PageRankOptions.OUTPUT_FORMAT_BINARY.equals(
+							PageRankOptions.getString(this.options,
+									PageRankOptions.OUTPUT_FORMAT,
+									PageRankOptions.OUTPUT_FORMAT_TEXT))) {
+				System.out.println("[log] The dangling sum of "
+						+ initRanksFile + " is not known, running full "
+						+ "iterations for the binary output");
+				complete = false;
+			}
+		}
 
-		double[][] initPageRanks = new double[this.numUrls][1];
-		for (int i = 0; i < this.numUrls; i++) {
-			initPageRanks[i][0] = 1 / (double) this.numUrls;
+		// with a delta threshold only the ranks that moved are broadcast
+		double deltaThreshold = PageRankOptions.getDouble(this.options,
+				PageRankOptions.DELTA_BCAST_THRESHOLD, 0);
+		DeltaBroadcaster deltaBroadcaster = null;
+		if (deltaThreshold > 0) {
+			deltaBroadcaster = new DeltaBroadcaster(this.numUrls, deltaThreshold);
+		}
+		// with a codec the broadcast is encoded and tells the map tasks how
+		// to encode their output
+		RankCodecSelector codecSelector = null;
+		if (RankCodecSelector.isEnabled(this.options)) {
+			codecSelector = new RankCodecSelector(this.options);
 		}
-		currDV = new DoubleVectorData(initPageRanks, this.numUrls, 1);
+		// in adaptive mode the urls that stopped changing are frozen
+		UrlFreezer freezer = null;
+		double freezeThreshold = PageRankOptions.getDouble(this.options,
+				PageRankOptions.ADAPTIVE_THRESHOLD, 0);
+		if (freezeThreshold > 0) {
+			freezer = new UrlFreezer(this.numUrls, freezeThreshold);
+			if (restarted) {
+				// checkpoints hold the ranks only, not the freezer
+				System.out.println("[log] Adaptive freezing starts over after "
+						+ "the restart, no url is frozen or counted as stable");
+			}
+		}
+		// optionally extrapolate the ranks from the last iterates
+		RankExtrapolator extrapolator = null;
+		double plainDanglingValSum = 0; // of the ranks an extrapolation replaced
+		double plainUniformRank = 0;
+		String extrapolation = PageRankOptions.getString(this.options,
+				PageRankOptions.EXTRAPOLATION, "none");
+		if (!extrapolation.equals("none")) {
+			extrapolator = new RankExtrapolator(this.numUrls, extrapolation,
+					PageRankOptions.getInt(this.options,
+							PageRankOptions.EXTRAPOLATION_INTERVAL, 10));
+		}
+		byte[] bcastBytes;
+		long totalBcastBytes = 0;
 
 		/*
 		 * [the data structure of the compressed pagerank matrix] the first item
@@ -227,55 +441,259 @@ public class PageRank2 {
 		 * the access probablity of one url note: i>0;
 		 */
 
-		double totalError = 0; // the error between current and previous rank values
-		double tolerance = 1E-8; // the threshold value that determine converge condition
-		int loopCount = 0;
+		double totalError = Double.MAX_VALUE; // the error between current and previous rank values
+		ConvergenceCheck convergence = new ConvergenceCheck(this.options); // the stopping rule
+		convergence.resumeAt(loopCount);
 		TwisterMonitor monitor = null;
-		boolean complete = false;
 
 		while (!complete) {
 			// start the pagerank map reduce process
-			monitor = driver.runMapReduceBCast(new BytesValue(currDV.getBytes()));
+			if (deltaBroadcaster != null) {
+				RankBroadcast bcast = deltaBroadcaster.next(currRV.ranks,
+						uniformRank);
+				bcastBytes = bcast.getBytes();
+				System.out.println("[log] Broadcast "
+						+ (bcast.type == RankBroadcast.FULL ? "all" : bcast.numEntries)
+						+ " ranks, " + bcastBytes.length + " bytes");
+			} else {
+				bcastBytes = currRV.getBytes();
+			}
+			if (codecSelector != null) {
+				bcastBytes = codecSelector.encode(bcastBytes,
+						deltaBroadcaster == null, totalError);
+				System.out.println("[log] Broadcast encoded with "
+						+ RankCodec.toString(RankCodec.codecOf(bcastBytes))
+						+ ", map outputs with "
+						+ RankCodec.toString(RankCodec.replyCodecOf(bcastBytes))
+						+ ", " + bcastBytes.length + " bytes");
+			}
+			if (freezer != null) {
+				bcastBytes = freezer.wrap(bcastBytes);
+			}
+			bcastBytes = BroadcastStamp.stamp(bcastBytes, loopCount);
+			totalBcastBytes += bcastBytes.length;
+			monitor = driver.runMapReduceBCast(new BytesValue(bcastBytes));
 			monitor.monitorTillCompletion();
-			newDV = ((PageRankCombiner) driver.getCurrentCombiner()).getResults(); // get the result of
-			totalError = getError(currDV, newDV); // get the difference between
-			System.out.println("[log] Error between current and previous rank values:"
-					+ totalError);
-			if (totalError < tolerance) {
-				complete = true;
+			PageRankCombiner2 combiner = (PageRankCombiner2) driver.getCurrentCombiner();
+			newRV = combiner.getResults(); // get the result of
+			uniformRank = combiner.getUniformRank();
+			// the combiner measured the change from the vector it handed out
+			// last time, unless the driver changed the new one since
+			ConvergenceCheck.Residual[] residuals = combiner
+					.getResiduals(currRV.ranks);
+			boolean reverted = false;
+			if (extrapolator != null) {
+				int action = extrapolator.next(newRV.ranks);
+				if (action == RankExtrapolator.EXTRAPOLATED) {
+					// what goes with the plain iterate, should it come back
+					plainDanglingValSum = newRV.danglingValSum;
+					plainUniformRank = uniformRank;
+					System.out.println("[log] Extrapolated the ranks ("
+							+ extrapolation + ")");
+				} else if (action == RankExtrapolator.REVERTED) {
+					newRV.danglingValSum = plainDanglingValSum;
+					uniformRank = plainUniformRank;
+					reverted = true;
+					System.out.println("[log] The extrapolation did not pay, "
+							+ "back to the plain ranks, extrapolating every "
+							+ extrapolator.getInterval() + " iterations");
+				}
+				if (action != RankExtrapolator.KEPT) {
+					residuals = null;
+				}
+			}
+			// the first iteration starts from the arbitrary initial ranks, so
+			// its changes say nothing about convergence
+			if (freezer != null && loopCount > 0) {
+				int numFrozen = freezer.update(currRV.ranks, newRV.ranks);
+				System.out.println("[log] Froze " + numFrozen + " urls, "
+						+ freezer.getNumFrozen() + " in total");
+			}
+			if (freezer != null) {
+				residuals = null; // the frozen urls were pinned
 			}
-			currDV = newDV;
+			if (loopCount == 0 && !judgeFirstIteration) {
+				System.out.println("[log] Not judging the first iteration, it "
+						+ "started from ranks without their dangling sum");
+				complete = convergence.skip();
+			} else if (reverted) {
+				// the change from the extrapolated ranks says nothing
+				complete = convergence.skip();
+			} else {
+				if (residuals != null) {
+					complete = convergence.update(residuals);
+				} else {
+					complete = convergence.update(currRV.ranks, newRV.ranks);
+				}
+				totalError = convergence.getError(); // get the difference between
+				System.out.println("[log] Error between current and previous rank values:"
+						+ totalError + " (" + convergence.report() + ")");
+			}
+			currRV = newRV;
 			loopCount++;
+			if (checkpointer != null && !complete
+					&& checkpointer.isDue(loopCount)) {
+				checkpointer.checkpoint(currRV, loopCount, uniformRank);
+			}
+		}
+		if (checkpointer != null) {
+			checkpointer.close();
 		}
 		System.out.println("[log] The error of rank values converged, total loop count:"
 				+ loopCount);
+		System.out.println("[log] Total broadcast bytes:" + totalBcastBytes);
 		double timeInSeconds = ((double) (System.currentTimeMillis() - beforeTime)) / 1000;
+		System.out.println("[log] " + loopCount + " iterations with "
+				+ PageRankOptions.getInt(this.options,
+						PageRankOptions.MAP_INNER_SWEEPS, 0)
+				+ " inner sweeps per map task took " + timeInSeconds
+				+ " seconds");
 
 		// store the final result of pagerank values into disk file.
-		double[][] finalPageRanks = currDV.getData();
-		BufferedWriter writer = new BufferedWriter(new FileWriter(
-				this.outputFile));
-		String strLine = this.numUrls + "\n";
-		writer.write(strLine);
-		for (int i = 0; i < this.numUrls; i++) {
-			strLine = i + " " + finalPageRanks[i][0] + "\n";
-			writer.write(strLine);
+		long writeStart = System.currentTimeMillis();
+		int outputThreads = PageRankOptions.getInt(this.options,
+				PageRankOptions.OUTPUT_THREADS, 1);
+		if (outputTopK > 0) {
+			TopKSelector top = TopKSelector.select(currRV.ranks, outputTopK,
+					Runtime.getRuntime().availableProcessors());
+			RankOutputWriter.writeTopK(this.outputFile + ".top", top);
+			System.out.println("[log] Wrote the top " + top.size()
+					+ " urls to " + this.outputFile + ".top in "
+					+ (System.currentTimeMillis() - writeStart) + " ms");
+			writeStart = System.currentTimeMillis();
+		}
+		boolean topKOnly = outputTopK > 0
+				&& PageRankOptions.getBoolean(this.options,
+						PageRankOptions.OUTPUT_TOPK_ONLY, false);
+		if (!topKOnly) {
+			if (PageRankOptions.OUTPUT_FORMAT_BINARY.equals(PageRankOptions
+					.getString(this.options, PageRankOptions.OUTPUT_FORMAT,
+							PageRankOptions.OUTPUT_FORMAT_TEXT))) {
+				RankOutputWriter.writeBinary(this.outputFile, currRV, loopCount,
+						uniformRank, outputThreads);
+			} else {
+				RankOutputWriter.writeText(this.outputFile, currRV.ranks,
+						outputThreads);
+			}
+			System.out.println("[log] Wrote the ranks to " + this.outputFile
+					+ " in " + (System.currentTimeMillis() - writeStart) + " ms");
 		}
-		writer.flush();
-		writer.close();
 		driver.close();
 	}
 
-	private double getError(DoubleVectorData tmpDvd, DoubleVectorData newDvd) {
-		double totalError = 0;
-		int numData = tmpDvd.getNumData();
-		double[][] tmpData = tmpDvd.getData();
-		double[][] newData = newDvd.getData();
+	/*
+	 * Send the link changes of deltaFile to the map tasks. When ranks, the
+	 * ranks of the graph before the changes, are given, the residual the
+	 * changes cause is then propagated round by round (see
+	 * ResidualPropagator) and ranks, with their dangling sum, are updated in
+	 * place. Too many changed urls, or rounds that cost more than
+	 * graph.delta.max.work full iterations, leave the rest to the full
+	 * iterations, from the estimate reached so far.
+	 * 
+	 * @return whether ranks now hold the ranks of the changed graph
+	 */
+	private boolean applyGraphDelta(TwisterDriver driver, String deltaFile,
+			RankVector ranks) throws Exception {
+		long start = System.currentTimeMillis();
+		ResidualPush push = ResidualPush.readDeltaFile(deltaFile, this.numUrls);
+		int[] changedUrls = push.changedUrls();
+		System.out.println("[log] Applying " + push.insertedFrom.length
+				+ " inserted and " + push.deletedFrom.length
+				+ " deleted links of " + changedUrls.length + " urls from "
+				+ deltaFile);
+		double maxFraction = PageRankOptions.getDouble(this.options,
+				PageRankOptions.GRAPH_DELTA_MAX_FRACTION, 0.1);
+		ResidualPropagator propagator = null;
+		if (ranks != null && changedUrls.length > maxFraction * this.numUrls) {
+			System.out.println("[log] Too many changed urls to propagate, "
+					+ "running full iterations");
+		} else if (ranks != null) {
+			propagator = new ResidualPropagator(ranks.ranks,
+					ranks.danglingValSum, PageRankOptions.getDouble(
+							this.options, PageRankOptions.GRAPH_DELTA_TOLERANCE,
+							1E-8), PageRankOptions.getDouble(this.options,
+							PageRankOptions.GRAPH_DELTA_MAX_WORK, 2));
+			// the first push starts the residual off from the changed rows
+			push.numEntries = changedUrls.length;
+			push.urls = changedUrls;
+			push.residuals = new double[changedUrls.length];
+			for (int i = 0; i < changedUrls.length; i++) {
+				push.residuals[i] = ranks.ranks[changedUrls[i]];
+			}
+		}
+		int rounds = 0;
+		long totalPushBytes = 0;
+		while (push != null) {
+			byte[] pushBytes = push.getBytes();
+			totalPushBytes += pushBytes.length;
+			TwisterMonitor monitor = driver.runMapReduceBCast(new BytesValue(
+					pushBytes));
+			monitor.monitorTillCompletion();
+			if (propagator == null) {
+				return false;
+			}
+			PageRankCombiner2 combiner = (PageRankCombiner2) driver
+					.getCurrentCombiner();
+			propagator.add(combiner.getResults(), combiner.getResidualUrls());
+			push = propagator.next();
+			rounds++;
+		}
+		double residualNorm = propagator.getResidualNorm();
+		propagator.finish(); // ranks now hold the estimate
+		ranks.danglingValSum = propagator.getDanglingValSum();
+		System.out.println("[log] " + (propagator.isTooLarge() ? "Gave up" : "Finished")
+				+ " propagating the residual after " + rounds + " rounds, "
+				+ totalPushBytes + " bytes pushed, the work of "
+				+ propagator.getWork() / (2.0 * this.numUrls)
+				+ " full iterations, L1 residual left "
+				+ residualNorm + ", uniform residual "
+				+ propagator.getUniformResidual() + ", took "
+				+ (System.currentTimeMillis() - start) / 1000.0 + " seconds");
+		return !propagator.isTooLarge();
+	}
 
-		for (int i = 0; i < numData; i++) {
-			totalError += (tmpData[i][1] - newData[i][1])
-					* (tmpData[i][1] - newData[i][1]);
+	/*
+	 * Seed ranks with the ranks of an earlier run. Urls the earlier run did
+	 * not have keep the uniform rank they start with, urls it had beyond
+	 * numUrls are dropped, and the result is scaled back to a sum of one.
+	 * The dangling sum of a rank vector file is scaled with its ranks and
+	 * its uniform term recomputed from it.
+	 * 
+	 * @return the rank vector file the ranks came from, null for text
+	 */
+	private RankVectorFile loadInitialRanks(String fileName, double[] ranks)
+			throws IOException {
+		long start = System.currentTimeMillis();
+		int numRanksRead;
+		RankVectorFile file = null;
+		if (RankVectorFile.isRankVectorFile(fileName)) {
+			file = RankVectorFile.read(fileName);
+			double[] previous = file.ranks.ranks;
+			numRanksRead = previous.length;
+			System.arraycopy(previous, 0, ranks, 0,
+					Math.min(previous.length, ranks.length));
+		} else {
+			numRanksRead = RankTextParser.parse(fileName, ranks);
+		}
+		double sum = 0;
+		for (int i = 0; i < ranks.length; i++) {
+			sum += ranks[i];
+		}
+		if (!(sum > 0)) {
+			throw new IOException("The ranks in " + fileName
+					+ " do not sum to a positive value");
+		}
+		for (int i = 0; i < ranks.length; i++) {
+			ranks[i] /= sum;
+		}
+		if (file != null) {
+			file.ranks.danglingValSum /= sum;
+			file.uniformRank = (.15 + .85 * file.ranks.danglingValSum)
+					/ ranks.length;
 		}
-		return totalError;
+		System.out.println("[log] Started from the ranks of " + numRanksRead
+				+ " urls in " + fileName + ", read in "
+				+ (System.currentTimeMillis() - start) + " ms");
+		return file;
 	}
 }
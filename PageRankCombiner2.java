@@ -52,18 +52,20 @@
 
 package cgl.imr.samples.pagerank;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import cgl.imr.base.Combiner;
 import cgl.imr.base.Key;
+import cgl.imr.base.SerializationException;
 import cgl.imr.base.TwisterException;
 import cgl.imr.base.Value;
 import cgl.imr.base.impl.JobConf;
-import cgl.imr.types.BytesValue;
-import cgl.imr.types.DoubleVectorData;
 
 /**
  * Combine the partial result of page result together.
@@ -75,10 +77,19 @@ import cgl.imr.types.DoubleVectorData;
 
 public class PageRankCombiner2 implements Combiner {
 
-	DoubleVectorData results;
+	RankVector results;
+	double uniformRank; // the teleport and dangling part shared by every rank
+	int mergeThreads; // threads that add the reducer outputs together
+	int topK; // urls the residuals select, see ConvergenceCheck
+	double[] residualBase; // the vector the residuals were measured against
+	ConvergenceCheck.Residual[] residuals; // change from the last results, per chunk
+	RankVector residualSums; // sums of the residual pushes, incremental mode
+	boolean[] residualListed; // whether a url is in residualUrls
+	int[] residualUrls; // the urls of residualSums that may be non-zero
+	int numResidualUrls;
 
 	public PageRankCombiner2() {
-		results = new DoubleVectorData();
+		results = new RankVector();
 	}
 
 	public void close() throws TwisterException {
@@ -86,45 +97,142 @@ public class PageRankCombiner2 implements Combiner {
 
 	public void combine(Map<Key, Value> keyValues) throws TwisterException {
 		try {
-			
-			int numUrls = -1;	        
-			double[][] newPageRanks = new double[numUrls][1];
-			double[][] currPageRanks; 
-			double totalDanglingValSum = 0.0;
-			
-			/* Write your code and COMPLETE HERE */
-			//shouldn't there only be 1 key? (see end of Reduce) 
-            for (Iterator<Key> ite = keyValues.keySet().iterator(); ite.hasNext();) {
-            		Key key = ite.next();
-                    BytesValue val = (BytesValue) keyValues.get(key);
-                    DoubleVectorData tmpDV = new DoubleVectorData();
-                    tmpDV.fromBytes(val.getBytes());
-                    numUrls = tmpDV.getNumData() - 1;
-                    currPageRanks = tmpDV.getData();
-                    totalDanglingValSum += currPageRanks[numUrls][0]; // merge dangling values 
-                    // merge the changed page rank values together
-                    for (int j = 0; j < numUrls; j++) {
-                    	newPageRanks[j][0] += currPageRanks[j][0];
-                    }
-            }			
-            // factor in dangling values, damping factor 
-            for (int i = 0; i < numUrls; i++) {
-            	double pageRankVal = newPageRanks[i][0] + (totalDanglingValSum / numUrls);
-            	newPageRanks[i][0] = (.15 / numUrls) + (.85 * pageRankVal);
-            }
-            
-            /** End of your code */ 
-			results = new DoubleVectorData(newPageRanks, numUrls, 1); 
-			
+			// each value is a url range summed over one group of map tasks;
+			// with several groups the same range comes once per group. They
+			// are added straight from their serialized bytes into the full vector
+			List<byte[]> slices = new ArrayList<byte[]>(keyValues.size());
+			for (Iterator<Key> ite = keyValues.keySet().iterator(); ite.hasNext();) {
+				slices.add(RankCodec.decode(keyValues.get(ite.next()).getBytes()));
+			}
+			int numUrls = RankVector.numUrlsOf(slices.get(0));
+			// merge dangling values
+			double danglingValSum = 0.0d;
+			for (int i = 0; i < slices.size(); i++) {
+				danglingValSum += RankVector.danglingValSumOf(slices.get(i));
+			}
+			if ((RankVector.flagsOf(slices.get(0)) & RankVector.RESIDUAL) != 0) {
+				combineResiduals(slices, numUrls, danglingValSum);
+				return;
+			}
+			RankVector newPageRanks = new RankVector(numUrls);
+			newPageRanks.danglingValSum = danglingValSum;
+			int numChunks = RankMerger.numChunks(mergeThreads, numUrls);
+			uniformRank = (.15 / numUrls) + (.85 * newPageRanks.danglingValSum / numUrls);
+
+			// merge the partial page rank values and factor in dangling values
+			// and the damping factor in the same pass, block by block. The
+			// change from the last results is measured on the finished blocks
+			// too, so the driver does not need another pass over the vectors
+			final double[] previous = results.ranks != null
+					&& results.ranks.length == numUrls
+					&& results.flags == 0 ? results.ranks : null;
+			final ConvergenceCheck.Residual[] chunkResiduals = previous == null ? null
+					: new ConvergenceCheck.Residual[numChunks];
+			if (chunkResiduals != null) {
+				for (int c = 0; c < numChunks; c++) {
+					chunkResiduals[c] = new ConvergenceCheck.Residual(topK);
+				}
+			}
+			RankMerger.merge(slices, newPageRanks.ranks, 0, numChunks,
+					new RankMerger.BlockVisitor() {
+						public void visit(int chunk, double[] newRanks, int from, int to) {
+							double uniform = uniformRank;
+							for (int i = from; i < to; i++) {
+								newRanks[i] = uniform + (.85 * newRanks[i]);
+							}
+							if (previous != null) {
+								chunkResiduals[chunk].add(previous, newRanks, from, to);
+							}
+						}
+					});
+			residualBase = previous;
+			residuals = chunkResiduals;
+			results = newPageRanks;
 		} catch (Exception e) {
 			throw new TwisterException(e);
 		}
 	}
 
+	/*
+	 * Residual pushes of the incremental mode are summed as they are, the
+	 * driver damps and spreads them itself. They reach few urls, so they
+	 * are summed into one vector kept from push to push, listing the urls
+	 * they reach, and only those are cleared again for the next push.
+	 */
+	private void combineResiduals(List<byte[]> slices, int numUrls,
+			double danglingValSum) throws SerializationException {
+		if (residualSums == null || residualSums.numUrls != numUrls) {
+			residualSums = new RankVector(numUrls);
+			residualSums.flags = RankVector.RESIDUAL;
+			residualListed = new boolean[numUrls];
+			residualUrls = new int[1024];
+			numResidualUrls = 0;
+		}
+		double[] sums = residualSums.ranks;
+		for (int i = 0; i < numResidualUrls; i++) {
+			sums[residualUrls[i]] = 0.0d;
+			residualListed[residualUrls[i]] = false;
+		}
+		numResidualUrls = 0;
+		for (int s = 0; s < slices.size(); s++) {
+			byte[] slice = slices.get(s);
+			RankVector.addTo(slice, sums, 0);
+			int[] urls = RankVector.urlsOf(slice);
+			if (urls == null) {
+				int offset = RankVector.offsetOf(slice);
+				int end = offset + RankVector.lengthOf(slice);
+				for (int url = offset; url < end; url++) {
+					listResidual(url);
+				}
+			} else {
+				for (int i = 0; i < urls.length; i++) {
+					listResidual(urls[i]);
+				}
+			}
+		}
+		residualSums.danglingValSum = danglingValSum;
+		residualBase = null;
+		residuals = null;
+		results = residualSums;
+	}
+
+	private void listResidual(int url) {
+		if (!residualListed[url]) {
+			residualListed[url] = true;
+			if (numResidualUrls == residualUrls.length) {
+				residualUrls = Arrays.copyOf(residualUrls, 2 * numResidualUrls);
+			}
+			residualUrls[numResidualUrls++] = url;
+		}
+	}
+
 	public void configure(JobConf jobConf) throws TwisterException {
+		mergeThreads = PageRankOptions.getInt(jobConf,
+				PageRankOptions.MERGE_THREADS, Runtime.getRuntime()
+						.availableProcessors());
+		topK = PageRankOptions.getInt(jobConf, PageRankOptions.CONVERGE_TOPK, 0);
 	}
 
-	public DoubleVectorData getResults() {
+	public RankVector getResults() {
 		return results;
 	}
+
+	/*
+	 * The change of the last results from previous, measured while they were
+	 * combined; null unless previous is the vector the combine before handed
+	 * out and it has not been replaced since.
+	 */
+	public ConvergenceCheck.Residual[] getResiduals(double[] previous) {
+		return previous != null && previous == residualBase ? residuals : null;
+	}
+
+	// the urls the last residual push reached, see combineResiduals()
+	public int[] getResidualUrls() {
+		return Arrays.copyOf(residualUrls, numResidualUrls);
+	}
+
+	// (0.15 + 0.85 * total dangling value) / numUrls of the last combine
+	public double getUniformRank() {
+		return uniformRank;
+	}
 }
@@ -52,11 +52,8 @@
 
 package cgl.imr.samples.pagerank;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
@@ -71,7 +68,6 @@ import cgl.imr.base.impl.JobConf;
 import cgl.imr.base.impl.MapperConf;
 import cgl.imr.data.file.FileData;
 import cgl.imr.types.BytesValue;
-import cgl.imr.types.DoubleVectorData;
 import cgl.imr.types.IntKey;
 
 /*
@@ -83,18 +79,46 @@ import cgl.imr.types.IntKey;
 
 public class PageRankMapTask2 implements MapTask {
 
-	// data structure of one item of adjacency matrix
-	public class UrlData {
-		public int index; // "from" index
-		public ArrayList<Integer> urls;
-	}
-
 	private FileData fileData;
 	private int numUrls; // number of urls of all tasks
 	private int numUrlsInTask; // number of urls of current map task
-	private UrlData[] UrlsData; // the adjacency matrix of all urls
+	private UrlAdjacency adjacency; // the adjacency matrix of the partition, in CSR layout
+	private boolean deltaBroadcast; // the driver broadcasts RankBroadcast deltas
+	private RankVector pageRanks; // the broadcast ranks, kept across iterations
+	private RankVector newPageRanks; // the partial ranks this mapper emits
+	private int mapThreads; // threads that share the rows of the partition
+	private int[] chunkRows; // row range of each thread
+	private double[][] chunkRanks; // partial ranks of threads 1..n-1, per linked url
+	private int[] targetPositions; // position in linkedUrls of each out-link's target
+	private boolean pullKernel; // gather over in-links instead of scattering
+	private int[] chunkInUrls; // linked url range of each thread, pull kernel
+	private double[] scaledRanks; // rank / outDegree of each row, pull kernel
+	private int[] linkedUrls; // the urls the partition links to, ascending
+	private int numRanges; // url ranges the output is split into
+	private int group; // aggregation group of this map task
+	private int taskNo; // index of this map task
+	private LocalRankAggregator localAggregator; // sums the tasks of this daemon
+	private int outputCodec; // RankCodec of the output, set by each broadcast
+	private int innerSweeps; // local Gauss-Seidel sweeps per iteration
+	private double uniformRank; // teleport and dangling term of the broadcast ranks
+	private double[] localInflow; // what the partition sent its own rows last iteration
+	private double[] externalInflow; // what the rest of the graph sends each row
+	private double[] rowRanks; // ranks of the rows during the sweeps
+	private double[] sweptRanks; // the broadcast ranks with the swept rows
+	private boolean adaptive; // the broadcasts carry the newly frozen urls
+	private double[] frozenRanks; // frozen rows' contributions per linked url, adaptive
+	private double frozenDanglingValSum; // ranks of the frozen dangling rows
+	private int[] rangeUrls; // first url of each range
+	private int[] rangeLinkedUrls; // first linkedUrls entry of each range
+	private RankVector residualRanks; // the residual pushes, incremental mode
+	private int[] touchedUrls; // targets the residual pushes reached
+	private int numTouched;
 
 	public void close() throws TwisterException {
+		if (localAggregator != null) {
+			localAggregator.unregister();
+			localAggregator = null;
+		}
 	}
 
 	/*
@@ -106,84 +130,509 @@ public class PageRankMapTask2 implements MapTask {
 	public void configure(JobConf jobConf, MapperConf mapConf)
 			throws TwisterException {
 		fileData = (FileData) mapConf.getDataPartition();
+		deltaBroadcast = PageRankOptions.getDouble(jobConf,
+				PageRankOptions.DELTA_BCAST_THRESHOLD, 0) > 0;
+		mapThreads = PageRankOptions.getInt(jobConf,
+				PageRankOptions.MAP_THREADS, 1);
 		try {
 			loadDataFromFile(fileData.getFileName());
 		} catch (Exception e) {
 			throw new TwisterException(e);
 		}
+		pullKernel = PageRankOptions.MAP_KERNEL_PULL.equals(PageRankOptions
+				.getString(jobConf, PageRankOptions.MAP_KERNEL,
+						PageRankOptions.MAP_KERNEL_PUSH));
+		innerSweeps = PageRankOptions.getInt(jobConf,
+				PageRankOptions.MAP_INNER_SWEEPS, 0);
+		adaptive = PageRankOptions.getDouble(jobConf,
+				PageRankOptions.ADAPTIVE_THRESHOLD, 0) > 0;
+		prepareKernels();
+		linkedUrls = adjacency.linkedUrls();
+		taskNo = mapConf.getMapTaskNo();
+		boolean localAggregation = PageRankOptions.getBoolean(jobConf,
+				PageRankOptions.MAP_LOCAL_AGGREGATION, false);
+		int numReduceTasks = Math.max(1, jobConf.getNumReduceTasks());
+		int fanIn = PageRankOptions.getInt(jobConf,
+				PageRankOptions.REDUCE_FAN_IN, 0);
+		if (localAggregation && fanIn > 0) {
+			// the daemon's sum mixes the tasks of several groups, under the
+			// group key of whichever task arrived last
+			throw new TwisterException(PageRankOptions.MAP_LOCAL_AGGREGATION
+					+ " cannot be combined with " + PageRankOptions.REDUCE_FAN_IN);
+		}
+		if (localAggregation) {
+			localAggregator = LocalRankAggregator.register(jobConf.getJobId());
+		}
+		if (fanIn > 0) {
+			// consecutive map tasks form groups of fanIn and each reduce key
+			// is a (group, range) pair, so no reduce call sums more than
+			// fanIn vectors. The reduce tasks are shared out over the
+			// groups, each group gets as many url ranges as it has tasks
+			int numGroups = (Math.max(1, jobConf.getNumMapTasks()) + fanIn - 1)
+					/ fanIn;
+			numRanges = Math.max(1, numReduceTasks / numGroups);
+			group = taskNo / fanIn;
+		} else {
+			numRanges = numReduceTasks;
+			group = 0;
+		}
+	}
+
+	// the per-partition state of the kernels, again whenever rows are dropped
+	private void prepareKernels() {
+		int threads = Math.max(1, Math.min(mapThreads, numUrlsInTask));
+		if (threads != mapThreads) {
+			mapThreads = threads;
+			chunkRanks = null;
+		}
+		targetPositions = null;
+		chunkRows = adjacency.splitRows(mapThreads);
+		if (pullKernel) {
+			adjacency.buildInLinks();
+			chunkInUrls = adjacency.splitInUrls(mapThreads);
+			scaledRanks = new double[numUrlsInTask];
+		}
+		if (innerSweeps > 0) {
+			adjacency.buildLocalInLinks();
+			externalInflow = new double[numUrlsInTask];
+			rowRanks = new double[numUrlsInTask];
+		}
 	}
 
 	/*
 	 * Map task in page rank algorithm
 	 * 
 	 * @parameter collector -used to store and emit the intermediate key value
-	 * pair.
+	 * pair, one per url range.
 	 * 
 	 * @parameter key -the index of map task.
 	 * 
 	 * @parameter val -the compressed changed page rank values.
 	 */
 
-	// construct the adjacency matrix of the partitioned data
+	/*
+	 * construct the adjacency matrix of the partitioned data. Partitions
+	 * converted with PartitionFileConverter are memory mapped, anything else
+	 * is parsed as the text adjacency format.
+	 */
 	public void loadDataFromFile(String fileName) throws IOException {
-		File file = new File(fileName);
-		BufferedReader reader = new BufferedReader(new FileReader(file));
-		String inputLine = reader.readLine();
-		this.numUrlsInTask = Integer.parseInt(inputLine); // num of urls that
-															// current map task
-															// have
-		UrlsData = new UrlData[numUrlsInTask];
-		String[] vectorValues;
-
-		for (int i = 0; i < numUrlsInTask; i++) {
-			UrlsData[i] = new UrlData();
-			UrlsData[i].urls = new ArrayList<Integer>();
-			inputLine = reader.readLine();
-			vectorValues = inputLine.split(" ");
-			UrlsData[i].index = Integer.parseInt(vectorValues[0]);
-			for (int j = 1; j < vectorValues.length; j++) {
-				UrlsData[i].urls.add(Integer.valueOf(vectorValues[j]));
-			}// end for j
-		}// end for i
-		reader.close();
+		if (BinaryPartitionFile.isBinaryPartition(fileName)) {
+			adjacency = BinaryPartitionFile.read(fileName);
+		} else {
+			adjacency = PartitionTextParser.parse(fileName);
+		}
+		this.numUrlsInTask = adjacency.numRows; // num of urls that current
+												// map task have
 	}// end loadDataFromFile
 
 	public void map(MapOutputCollector collector, Key key, Value val)
 			throws TwisterException {
-			try {
-				DoubleVectorData tmpDV = new DoubleVectorData();
-				tmpDV.fromBytes(val.getBytes());
-				double[][] tmpPageRanks = tmpDV.getData();
-	            this.numUrls = tmpPageRanks.length;
-	            double[][] newPageRanks = new double[numUrls + 1][1];  //last entry reserved for storing danglingValSum for this partition	            													 
-	    
-	            /** Your solution here */ 
-	            double danglingValSum = 0.0d;
-	            int fromUrl = -1;
-	            int toUrl = -1;
-	            for (int i = 0; i < numUrlsInTask; i++) {
-	            		if (UrlsData[i].urls.size() == 0) {
-	            			danglingValSum += tmpPageRanks[fromUrl][0];
-	                    	continue;
-	            		} 
-	            		fromUrl = UrlsData[i].index;
-	            		double fromUrlPRVal = tmpPageRanks[fromUrl][0];
-	            		double numTargetUrls = UrlsData[i].urls.size();
-	                    for (int j = 0; j < numTargetUrls; j++) {
-	                            toUrl = (UrlsData[i].urls.get(j)).intValue();
-	                            newPageRanks[toUrl][0] += fromUrlPRVal / numTargetUrls;
-	                    }
-	            }
-	            /** End of your solution */
-	            newPageRanks[numUrls][0] = danglingValSum;
-	            DoubleVectorData resultDV = new DoubleVectorData(newPageRanks,
-	                            this.numUrls + 1, 1);
-	            int taskNo = key.hashCode();
-	            collector.collect(new IntKey(taskNo), new BytesValue(resultDV
-	                            .getBytes()));
-	            
-	    } catch (SerializationException e) {
-	            throw new TwisterException(e);
-	    }
+		try {
+			byte[] bytes = val.getBytes();
+			if (ResidualPush.isResidualPush(bytes)) {
+				pushResiduals(collector, bytes);
+				return;
+			}
+			int iteration = BroadcastStamp.iterationOf(bytes);
+			int[] newlyFrozen = null;
+			if (adaptive) {
+				newlyFrozen = UrlFreezer.frozenUrlsOf(bytes,
+						BroadcastStamp.payloadEnd(bytes));
+			}
+			outputCodec = RankCodec.replyCodecOf(bytes);
+			bytes = RankCodec.decode(bytes);
+			if (deltaBroadcast) {
+				RankBroadcast bcast = new RankBroadcast();
+				bcast.fromBytes(bytes);
+				if (pageRanks == null) {
+					pageRanks = new RankVector(bcast.numUrls);
+				}
+				bcast.applyTo(pageRanks.ranks);
+				uniformRank = bcast.type == RankBroadcast.FULL ? bcast.shift
+						: uniformRank + bcast.shift;
+			} else {
+				if (pageRanks == null) {
+					pageRanks = new RankVector();
+				}
+				pageRanks.fromBytes(bytes);
+				uniformRank = (.15 + .85 * pageRanks.danglingValSum)
+						/ pageRanks.numUrls;
+			}
+			this.numUrls = pageRanks.numUrls;
+			if (newlyFrozen != null && newlyFrozen.length > 0) {
+				freeze(newlyFrozen, pageRanks.ranks);
+			}
+			// the output vector is reused across iterations. Only the linked
+			// urls are ever written, they start from the contributions of the
+			// frozen rows
+			if (newPageRanks == null || newPageRanks.numUrls != numUrls) {
+				newPageRanks = new RankVector(numUrls);
+			}
+			final double[] newRanks = newPageRanks.ranks;
+			if (frozenRanks == null) {
+				for (int d = 0; d < linkedUrls.length; d++) {
+					newRanks[linkedUrls[d]] = 0.0d;
+				}
+			} else {
+				for (int d = 0; d < linkedUrls.length; d++) {
+					newRanks[linkedUrls[d]] = frozenRanks[d];
+				}
+			}
+
+			final double[] ranks = innerSweeps > 0 ? sweep(pageRanks.ranks)
+					: pageRanks.ranks;
+			if (pullKernel) {
+				pull(ranks, newRanks);
+			} else if (mapThreads == 1) {
+				adjacency.push(ranks, newRanks, 0, numUrlsInTask);
+			} else {
+				pushInParallel(ranks, newRanks);
+			}
+			double danglingValSum = frozenDanglingValSum;
+			int[] danglingUrls = adjacency.danglingUrls;
+			for (int i = 0; i < danglingUrls.length; i++) {
+				danglingValSum += ranks[danglingUrls[i]];
+			}
+			newPageRanks.danglingValSum = danglingValSum;
+			if (innerSweeps > 0) {
+				// the partition's own part of the inflow of its rows, to be
+				// taken out of the next broadcast
+				if (localInflow == null) {
+					localInflow = new double[numUrlsInTask];
+				}
+				int[] urls = adjacency.urls;
+				for (int i = 0; i < numUrlsInTask; i++) {
+					localInflow[i] = newRanks[urls[i]] - frozenRankOf(urls[i]);
+				}
+			}
+
+			// one slice per url range, keyed by the group and the range so that
+			// each reduce task sums one range of one group; the dangling sum
+			// travels with range 0. Slices are sparse when only a few of their
+			// urls got a contribution
+			if (rangeUrls == null) {
+				splitRanges();
+			}
+			if (localAggregator == null) {
+				emit(collector, newPageRanks, linkedUrls, rangeLinkedUrls);
+				return;
+			}
+			// only the last map task of the daemon to finish emits, the sum
+			// of them all
+			RankVector localRanks = localAggregator.add(newPageRanks,
+					linkedUrls, taskNo, iteration);
+			if (localRanks != null) {
+				try {
+					emit(collector, localRanks, null, null);
+				} finally {
+					localAggregator.done();
+				}
+			}
+		} catch (SerializationException e) {
+			throw new TwisterException(e);
+		} catch (IOException e) {
+			throw new TwisterException(e);
+		}
 	}// end map
+
+	/*
+	 * Incremental mode, see ResidualPush: apply the link changes the first
+	 * push carries, then push the listed residuals along the rows of the
+	 * partition and emit their sums. Only the targets the pushes reach are
+	 * written, emitted and cleared again afterwards, so a round costs the
+	 * out-links of the pushed rows rather than the whole partition.
+	 */
+	private void pushResiduals(MapOutputCollector collector, byte[] bytes)
+			throws SerializationException, IOException {
+		ResidualPush push = new ResidualPush();
+		push.fromBytes(bytes);
+		UrlAdjacency previousRows = null;
+		if (push.hasEdges()) {
+			previousRows = new UrlAdjacency(16, 16);
+			adjacency = adjacency.withEdges(push.insertedFrom, push.insertedTo,
+					push.deletedFrom, push.deletedTo, push.deletedLines,
+					previousRows);
+			previousRows.finish();
+			prepareKernels();
+			linkedUrls = adjacency.linkedUrls();
+			rangeUrls = null;
+			localInflow = null;
+			newPageRanks = null; // may hold urls that are no longer linked
+		}
+		numUrls = push.numUrls;
+		if (residualRanks == null || residualRanks.numUrls != numUrls) {
+			residualRanks = new RankVector(numUrls);
+			residualRanks.flags = RankVector.RESIDUAL;
+			touchedUrls = new int[1024];
+		}
+		numTouched = 0;
+		double danglingValSum = 0.0d;
+		for (int e = 0; e < push.numEntries; e++) {
+			int url = push.urls[e];
+			danglingValSum += pushRow(adjacency, url, push.residuals[e]);
+			if (previousRows != null) {
+				danglingValSum += pushRow(previousRows, url, -push.residuals[e]);
+			}
+		}
+		residualRanks.danglingValSum = danglingValSum;
+		Arrays.sort(touchedUrls, 0, numTouched);
+		int numDistinct = 0;
+		for (int i = 0; i < numTouched; i++) {
+			if (numDistinct == 0 || touchedUrls[numDistinct - 1] != touchedUrls[i]) {
+				touchedUrls[numDistinct++] = touchedUrls[i];
+			}
+		}
+		int[] touched = Arrays.copyOf(touchedUrls, numDistinct);
+		if (rangeUrls == null) {
+			splitRanges();
+		}
+		outputCodec = RankCodec.NONE;
+		emit(collector, residualRanks, touched, rangeStarts(touched));
+		double[] sums = residualRanks.ranks;
+		for (int i = 0; i < touched.length; i++) {
+			sums[touched[i]] = 0.0d;
+		}
+	}
+
+	// push residual along the row of url in rows, if it is there; returns
+	// what a dangling row adds to the dangling value sum instead
+	private double pushRow(UrlAdjacency rows, int url, double residual) {
+		int row = rows.rowOf(url);
+		if (row < 0) {
+			return 0.0d;
+		}
+		int degree = rows.outDegree(row);
+		if (degree == 0) {
+			return residual;
+		}
+		if (numTouched + degree > touchedUrls.length) {
+			touchedUrls = Arrays.copyOf(touchedUrls, 2 * (numTouched + degree));
+		}
+		double contribution = residual * rows.invOutDegree[row];
+		double[] sums = residualRanks.ranks;
+		int end = rows.offsets[row + 1];
+		for (int j = rows.offsets[row]; j < end; j++) {
+			int target = rows.targets[j];
+			// a target is listed when it is first reached; the rare sum
+			// that cancels to 0 lists it again and is sorted out later
+			if (sums[target] == 0.0d) {
+				touchedUrls[numTouched++] = target;
+			}
+			sums[target] += contribution;
+		}
+		return 0.0d;
+	}
+
+	/*
+	 * Adaptive mode: push the contributions of the rows of the newly frozen
+	 * urls once, at the rank the driver pins them to, into frozenRanks (one
+	 * entry per linked url) and drop the rows from the partition. Their part of the local inflow of
+	 * the remaining rows counts as inflow from outside from now on.
+	 */
+	private void freeze(int[] urls, double[] ranks) {
+		boolean[] frozenRows = new boolean[numUrlsInTask];
+		int count = 0;
+		for (int i = 0; i < urls.length; i++) {
+			int row = adjacency.rowOf(urls[i]);
+			if (row >= 0) {
+				frozenRows[row] = true;
+				count++;
+			}
+		}
+		if (count == 0) {
+			return;
+		}
+		if (frozenRanks == null) {
+			frozenRanks = new double[linkedUrls.length];
+		}
+		int[] rowUrls = adjacency.urls;
+		if (localInflow != null) {
+			for (int i = 0; i < numUrlsInTask; i++) {
+				localInflow[i] += frozenRankOf(rowUrls[i]);
+			}
+		}
+		for (int i = 0; i < numUrlsInTask; i++) {
+			if (!frozenRows[i]) {
+				continue;
+			}
+			if (adjacency.outDegree(i) == 0) {
+				frozenDanglingValSum += ranks[rowUrls[i]];
+			} else {
+				double contribution = ranks[rowUrls[i]]
+						* adjacency.invOutDegree[i];
+				int end = adjacency.offsets[i + 1];
+				for (int j = adjacency.offsets[i]; j < end; j++) {
+					frozenRanks[Arrays.binarySearch(linkedUrls,
+							adjacency.targets[j])] += contribution;
+				}
+			}
+		}
+		if (localInflow != null) {
+			int kept = 0;
+			for (int i = 0; i < numUrlsInTask; i++) {
+				if (!frozenRows[i]) {
+					localInflow[kept++] = localInflow[i] - frozenRankOf(rowUrls[i]);
+				}
+			}
+			localInflow = Arrays.copyOf(localInflow, kept);
+		}
+		adjacency = adjacency.withoutRows(frozenRows);
+		numUrlsInTask = adjacency.numRows;
+		prepareKernels();
+	}
+
+	// what the frozen rows contribute to url
+	private double frozenRankOf(int url) {
+		if (frozenRanks == null) {
+			return 0.0d;
+		}
+		int d = Arrays.binarySearch(linkedUrls, url);
+		return d >= 0 ? frozenRanks[d] : 0.0d;
+	}
+
+	/*
+	 * Inner sweeps: every broadcast rank is uniform + 0.85 * inflow, and the
+	 * part of the inflow of a row that came from this partition is known
+	 * from the last iteration, so the rest is the inflow from outside the
+	 * partition. Holding that fixed, the rows are swept Gauss-Seidel style
+	 * over the links inside the partition, and the map task then emits the
+	 * contributions of the swept ranks. The first iteration has no inflow
+	 * to go on and emits the broadcast ranks as they are.
+	 * 
+	 * The sweeps move the sum of the ranks away from 1, and left alone that
+	 * error decays no faster than 0.85 per iteration, which on a well mixed
+	 * graph is slower than plain Jacobi. So the broadcast is scaled to sum
+	 * 1 first, inflow and uniform term with it; every map task scales by the
+	 * same factor and the fixed point, which sums to 1, is unchanged.
+	 */
+	private double[] sweep(double[] ranks) {
+		if (localInflow == null) {
+			return ranks;
+		}
+		if (sweptRanks == null || sweptRanks.length != numUrls) {
+			sweptRanks = new double[numUrls];
+		}
+		System.arraycopy(ranks, 0, sweptRanks, 0, numUrls);
+		double sum = 0.0d;
+		for (int u = 0; u < numUrls; u++) {
+			sum += ranks[u];
+		}
+		double scale = sum > 0.0d ? 1.0d / sum : 1.0d;
+		double teleport = .15 / numUrls;
+		double uniform = teleport + (uniformRank - teleport) * scale;
+		int[] urls = adjacency.urls;
+		for (int i = 0; i < numUrlsInTask; i++) {
+			double rank = ranks[urls[i]];
+			rowRanks[i] = rank * scale;
+			externalInflow[i] = ((rank - uniformRank) / .85 - localInflow[i])
+					* scale;
+		}
+		for (int s = 0; s < innerSweeps; s++) {
+			adjacency.sweep(rowRanks, externalInflow, uniform);
+		}
+		for (int i = 0; i < numUrlsInTask; i++) {
+			sweptRanks[urls[i]] = rowRanks[i];
+		}
+		return sweptRanks;
+	}
+
+	/*
+	 * Emit the url ranges of ranks. When candidates is not null only those
+	 * urls can be non-zero, and range r holds candidates[candidateStarts[r]
+	 * .. candidateStarts[r + 1]).
+	 */
+	private void emit(MapOutputCollector collector, RankVector ranks,
+			int[] candidates, int[] candidateStarts)
+			throws SerializationException {
+		for (int r = 0; r < numRanges; r++) {
+			byte[] slice;
+			double danglingValSum = r == 0 ? ranks.danglingValSum : 0.0d;
+			if (candidates == null) {
+				slice = ranks.getCompactBytes(rangeUrls[r], rangeUrls[r + 1],
+						null, 0, 0, danglingValSum);
+			} else {
+				slice = ranks.getCompactBytes(rangeUrls[r], rangeUrls[r + 1],
+						candidates, candidateStarts[r], candidateStarts[r + 1],
+						danglingValSum);
+			}
+			if (outputCodec != RankCodec.NONE) {
+				slice = RankCodec.encode(slice, outputCodec, RankCodec.NONE);
+			}
+			collector.collect(new IntKey(group * numRanges + r),
+					new BytesValue(slice));
+		}
+	}
+
+	// split the urls into numRanges ranges and find where each starts in linkedUrls
+	private void splitRanges() {
+		rangeUrls = ParallelRanges.split(numUrls, numRanges);
+		rangeLinkedUrls = rangeStarts(linkedUrls);
+	}
+
+	// where each url range starts in urls (ascending)
+	private int[] rangeStarts(int[] urls) {
+		int[] starts = new int[numRanges + 1];
+		for (int r = 0; r <= numRanges; r++) {
+			int position = Arrays.binarySearch(urls, rangeUrls[r]);
+			starts[r] = position >= 0 ? position : -position - 1;
+		}
+		return starts;
+	}
+
+	/*
+	 * Pull kernel: scale the rank of every row by 1/outDegree once, then let
+	 * each thread gather the in-links of its own range of linked urls. The
+	 * writes are sequential and no two threads touch the same url.
+	 */
+	private void pull(final double[] ranks, final double[] newRanks) {
+		ParallelRanges.run(chunkRows, new ParallelRanges.Body() {
+			public void run(int chunk, int fromRow, int toRow) {
+				adjacency.scale(ranks, scaledRanks, fromRow, toRow);
+			}
+		});
+		ParallelRanges.run(chunkInUrls, new ParallelRanges.Body() {
+			public void run(int chunk, int fromIn, int toIn) {
+				adjacency.pull(scaledRanks, newRanks, fromIn, toIn);
+			}
+		});
+	}
+
+	/*
+	 * Each thread pushes the contributions of its own row range into its own
+	 * buffer (thread 0 directly into the output), then the buffers are summed
+	 * per range in thread order, so the result does not depend on how the
+	 * threads were scheduled. The buffers only hold the linked urls of the
+	 * partition, in the order of linkedUrls.
+	 */
+	private void pushInParallel(final double[] ranks, final double[] newRanks) {
+		if (targetPositions == null) {
+			targetPositions = adjacency.targetPositions(linkedUrls);
+		}
+		final int numLinked = linkedUrls.length;
+		if (chunkRanks == null || chunkRanks[0].length != numLinked) {
+			chunkRanks = new double[mapThreads - 1][numLinked];
+		}
+		ParallelRanges.run(chunkRows, new ParallelRanges.Body() {
+			public void run(int chunk, int fromRow, int toRow) {
+				if (chunk == 0) {
+					adjacency.push(ranks, newRanks, fromRow, toRow);
+				} else {
+					double[] contributions = chunkRanks[chunk - 1];
+					Arrays.fill(contributions, 0.0d);
+					adjacency.push(ranks, contributions, targetPositions,
+							fromRow, toRow);
+				}
+			}
+		});
+		ParallelRanges.run(numLinked, mapThreads, new ParallelRanges.Body() {
+			public void run(int chunk, int from, int to) {
+				for (int c = 0; c < chunkRanks.length; c++) {
+					double[] contributions = chunkRanks[c];
+					for (int d = from; d < to; d++) {
+						newRanks[linkedUrls[d]] += contributions[d];
+					}
+				}
+			}
+		});
+	}
 }
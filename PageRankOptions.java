@@ -0,0 +1,246 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.samples.pagerank;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import cgl.imr.base.impl.JobConf;
+
+/*
+ * Optional settings of the PageRank2 job. They are given as name=value
+ * arguments after the required ones on the command line; the driver copies
+ * them into the JobConf so the map, reduce and combine tasks can read them
+ * back in configure().
+ */
+
+public class PageRankOptions {
+
+	// broadcast only the ranks that moved more than this since the last
+	// broadcast, 0 broadcasts the full rank vector every iteration
+	public static final String DELTA_BCAST_THRESHOLD = "bcast.delta.threshold";
+
+	// threads that share the rows of one map task's partition
+	public static final String MAP_THREADS = "map.threads";
+
+	// map kernel: "push" scatters along out-links, "pull" gathers along
+	// the in-links of the partition
+	public static final String MAP_KERNEL = "map.kernel";
+	public static final String MAP_KERNEL_PUSH = "push";
+	public static final String MAP_KERNEL_PULL = "pull";
+
+	// threads that merge the partial rank vectors in each reduce task and in
+	// the combiner, default the number of cores
+	public static final String MERGE_THREADS = "merge.threads";
+
+	// map tasks whose partial ranks one reduce call sums, 0 sums all of
+	// them; the combiner then adds up one vector per group
+	public static final String REDUCE_FAN_IN = "reduce.fanin";
+
+	// reduce tasks decode and add one partial vector at a time into the sum,
+	// default true; false decodes all of them and merges them block by
+	// block in one parallel pass
+	public static final String REDUCE_STREAMING = "reduce.streaming";
+
+	// sum the partial ranks of all the map tasks in one daemon before they
+	// are emitted, default false
+	public static final String MAP_LOCAL_AGGREGATION = "map.local.aggregation";
+
+	// wire encoding of the broadcast and the map outputs, see RankCodec:
+	// "none" (default), "auto" to let the driver choose every few
+	// iterations, or a fixed codec such as "varint+lz4"
+	public static final String CODEC = "codec";
+
+	// value encoding used while the error is above codec.lossy.error:
+	// "float32", "scaled" or "none" (default)
+	public static final String CODEC_LOSSY = "codec.lossy";
+	public static final String CODEC_LOSSY_ERROR = "codec.lossy.error";
+
+	// network bandwidth in MB/s the auto codec weighs encoding time against
+	public static final String CODEC_BANDWIDTH = "codec.bandwidth";
+
+	// Gauss-Seidel sweeps each map task runs over the links inside its
+	// partition before emitting, 0 (default) for plain Jacobi iterations.
+	// The gain grows with the share of links inside the partitions; it
+	// needs the full broadcast, so not with bcast.delta.threshold
+	public static final String MAP_INNER_SWEEPS = "map.inner.sweeps";
+
+	// adaptive mode: freeze the urls whose rank changed by no more than this
+	// fraction of the rank in an iteration, 0 (default) freezes none
+	public static final String ADAPTIVE_THRESHOLD = "adaptive.threshold";
+
+	// driver side extrapolation of the ranks, "aitken", "quadratic" or
+	// "none" (default), applied every extrapolation.interval iterations
+	public static final String EXTRAPOLATION = "extrapolation";
+	public static final String EXTRAPOLATION_INTERVAL = "extrapolation.interval";
+
+	// stopping rule, see ConvergenceCheck: the norm of the change between
+	// iterations ("l1", "l2", "l2sq" (default) or "linf"), optionally
+	// relative to the norm of the ranks, and the tolerance it must drop below
+	public static final String CONVERGE_NORM = "converge.norm";
+	public static final String CONVERGE_RELATIVE = "converge.relative";
+	public static final String CONVERGE_TOLERANCE = "converge.tolerance";
+
+	// also stop once the order of the top k urls has not changed for
+	// converge.topk.iterations iterations, 0 (default) never
+	public static final String CONVERGE_TOPK = "converge.topk";
+	public static final String CONVERGE_TOPK_ITERATIONS = "converge.topk.iterations";
+
+	// stop after this many iterations whatever the error, 0 (default) never
+	public static final String CONVERGE_MAX_ITERATIONS = "converge.max.iterations";
+
+	// start from the ranks of an earlier run, its text output or a
+	// RankVectorFile, instead of the uniform vector
+	public static final String INIT_RANKS = "init.ranks";
+
+	// write the ranks to this RankVectorFile every checkpoint.interval
+	// iterations (default 10); with restart=true the job resumes from it
+	// when it exists. Only the ranks are kept, adaptive freezing starts over
+	public static final String CHECKPOINT_FILE = "checkpoint.file";
+	public static final String CHECKPOINT_INTERVAL = "checkpoint.interval";
+	public static final String RESTART = "restart";
+
+	// apply the link changes of this file ("+ from to" / "- from to" lines)
+	// to the partitions before iterating. Starting from init.ranks, the
+	// ranks before the changes, graph.delta.incremental (default true)
+	// propagates just the residual the changes cause, until it is below
+	// graph.delta.tolerance in the L1 norm. It falls back to full
+	// iterations when more than graph.delta.max.fraction of the urls change,
+	// or once the rounds have pushed and got back as many entries as
+	// graph.delta.max.work full iterations broadcast and combine
+	public static final String GRAPH_DELTA = "graph.delta";
+	public static final String GRAPH_DELTA_INCREMENTAL = "graph.delta.incremental";
+	public static final String GRAPH_DELTA_TOLERANCE = "graph.delta.tolerance";
+	public static final String GRAPH_DELTA_MAX_FRACTION = "graph.delta.max.fraction";
+	public static final String GRAPH_DELTA_MAX_WORK = "graph.delta.max.work";
+
+	// format of the output file, "text" (default) or "binary" (a
+	// RankVectorFile), and the threads writing it in parallel chunks
+	public static final String OUTPUT_FORMAT = "output.format";
+	public static final String OUTPUT_FORMAT_TEXT = "text";
+	public static final String OUTPUT_FORMAT_BINARY = "binary";
+	public static final String OUTPUT_THREADS = "output.threads";
+
+	// also write the k urls with the highest ranks, in descending order, to
+	// the output file name with ".top" appended, 0 (default) for none; with
+	// output.topk.only the full output is left out
+	public static final String OUTPUT_TOPK = "output.topk";
+	public static final String OUTPUT_TOPK_ONLY = "output.topk.only";
+
+	public static Map<String, String> parse(String[] args, int first) {
+		Map<String, String> options = new LinkedHashMap<String, String>();
+		for (int i = first; i < args.length; i++) {
+			int split = args[i].indexOf('=');
+			if (split <= 0) {
+				throw new IllegalArgumentException("Expected name=value but got "
+						+ args[i]);
+			}
+			options.put(args[i].substring(0, split).trim(),
+					args[i].substring(split + 1).trim());
+		}
+		return options;
+	}
+
+	public static void addToJobConf(Map<String, String> options, JobConf jobConf) {
+		for (Map.Entry<String, String> option : options.entrySet()) {
+			jobConf.addProperty(option.getKey(), option.getValue());
+		}
+	}
+
+	public static String getString(Map<String, String> options, String name,
+			String defaultValue) {
+		String value = options.get(name);
+		return value == null ? defaultValue : value;
+	}
+
+	public static double getDouble(Map<String, String> options, String name,
+			double defaultValue) {
+		String value = options.get(name);
+		return value == null ? defaultValue : Double.parseDouble(value);
+	}
+
+	public static int getInt(Map<String, String> options, String name,
+			int defaultValue) {
+		String value = options.get(name);
+		return value == null ? defaultValue : Integer.parseInt(value);
+	}
+
+	public static boolean getBoolean(Map<String, String> options,
+			String name, boolean defaultValue) {
+		String value = options.get(name);
+		return value == null ? defaultValue : Boolean.parseBoolean(value);
+	}
+
+	public static String getString(JobConf jobConf, String name,
+			String defaultValue) {
+		String value = jobConf.getProperty(name);
+		return value == null ? defaultValue : value;
+	}
+
+	public static double getDouble(JobConf jobConf, String name,
+			double defaultValue) {
+		String value = jobConf.getProperty(name);
+		return value == null ? defaultValue : Double.parseDouble(value);
+	}
+
+	public static int getInt(JobConf jobConf, String name, int defaultValue) {
+		String value = jobConf.getProperty(name);
+		return value == null ? defaultValue : Integer.parseInt(value);
+	}
+
+	public static boolean getBoolean(JobConf jobConf, String name,
+			boolean defaultValue) {
+		String value = jobConf.getProperty(name);
+		return value == null ? defaultValue : Boolean.parseBoolean(value);
+	}
+}
@@ -52,6 +52,7 @@
 
 package cgl.imr.samples.pagerank;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -66,7 +67,6 @@ import cgl.imr.base.Value;
 import cgl.imr.base.impl.JobConf;
 import cgl.imr.base.impl.ReducerConf;
 import cgl.imr.types.BytesValue;
-import cgl.imr.types.DoubleVectorData;
 import cgl.imr.types.IntKey;
 
 /*
@@ -88,46 +88,66 @@ public class PageRankReduceTask2 implements ReduceTask {
 	 * 
 	 * @parameter collector -store the intermediate key value pair
 	 * 
-	 * @parameter key -the index of group of map tasks
+	 * @parameter key -the index of the url range within the map task group
 	 * 
-	 * @parameter values -the list of compressed values of changed urls of
-	 * groups
+	 * @parameter values -the url range of the partial page rank values of
+	 * each map task in the group
 	 */
 
+	private int mergeThreads; // threads that add the values together
+	private boolean streaming; // add and drop one value at a time
+
 	public void configure(JobConf jobConf, ReducerConf reducerConf)
 			throws TwisterException {
+		mergeThreads = PageRankOptions.getInt(jobConf,
+				PageRankOptions.MERGE_THREADS, Runtime.getRuntime()
+						.availableProcessors());
+		streaming = PageRankOptions.getBoolean(jobConf,
+				PageRankOptions.REDUCE_STREAMING, true);
 	}
 
 	public void reduce(ReduceOutputCollector collector, Key key, List<Value> values) throws TwisterException {
-		try {			
-			// get total # of URLs (PageRank entries) 
-			BytesValue val = (BytesValue) values.get(0);
-            DoubleVectorData tmpDV = new DoubleVectorData();
-            tmpDV.fromBytes(val.getBytes());
-            int numUrls = tmpDV.getNumData() - 1;
-            
-			double[][] newPageRanks = new double[numUrls + 1][1];
-			double[][] currPageRanks; 
-			double totalDanglingValSum = 0.0;
-			
-			/** Write your code and COMPLETE HERE */
-            for (int i = 0; i < values.size(); i++) {
-                    val = (BytesValue) values.get(i);
-                    tmpDV = new DoubleVectorData();
-                    tmpDV.fromBytes(val.getBytes());
-                    currPageRanks = tmpDV.getData();
-                    totalDanglingValSum += currPageRanks[numUrls][0]; // merge dangling values 
-                    // merge the changed page rank values together
-                    for (int j = 0; j < numUrls; j++) {
-                            newPageRanks[j][0] += currPageRanks[j][0];
-                    }
-            }
-            
-            /** End of your code */ 
-            
-			newPageRanks[numUrls][0] = totalDanglingValSum;
-			DoubleVectorData resultDvd = new DoubleVectorData(newPageRanks, numUrls + 1, 1);
-			collector.collect(new IntKey(1), new BytesValue(resultDvd.getBytes())); 
+		try {
+			// every value is the same url range (the key) of a map task's
+			// partial ranks; they are summed straight from their serialized
+			// bytes, the size of the sum comes from the header of the first.
+			// The output is encoded with the lossless part of the input's
+			// codec, so the rounding of a lossy codec happens only once
+			byte[] bytes = values.get(0).getBytes();
+			int codec = RankCodec.codecOf(bytes) & ~RankCodec.LOSSY;
+			bytes = RankCodec.decode(bytes);
+			byte[] first = bytes;
+			RankVector newPageRanks = new RankVector(RankVector.numUrlsOf(bytes),
+					RankVector.offsetOf(bytes), RankVector.lengthOf(bytes));
+			newPageRanks.flags = RankVector.flagsOf(bytes);
+			if (streaming) {
+				// decode and add one value at a time on this thread, so
+				// besides the sum only the value being added is decoded
+				for (int i = 0; i < values.size(); i++) {
+					bytes = i == 0 ? first : RankCodec.decode(values.get(i)
+							.getBytes());
+					newPageRanks.danglingValSum += RankVector.danglingValSumOf(bytes);
+					RankVector.addTo(bytes, newPageRanks.ranks,
+							newPageRanks.offset);
+				}
+			} else {
+				List<byte[]> slices = new ArrayList<byte[]>(values.size());
+				for (int i = 0; i < values.size(); i++) {
+					slices.add(RankCodec.decode(values.get(i).getBytes()));
+				}
+				// merge dangling values and the partial page rank values
+				for (int i = 0; i < slices.size(); i++) {
+					newPageRanks.danglingValSum += RankVector.danglingValSumOf(slices.get(i));
+				}
+				RankMerger.merge(slices, newPageRanks.ranks, newPageRanks.offset,
+						RankMerger.numChunks(mergeThreads,
+								newPageRanks.ranks.length), null);
+			}
+			bytes = newPageRanks.getCompactBytes();
+			if (codec != RankCodec.NONE) {
+				bytes = RankCodec.encode(bytes, codec, RankCodec.NONE);
+			}
+			collector.collect(key, new BytesValue(bytes));
 			// emit the results to combiner
 		} catch (SerializationException e) {
 			throw new TwisterException(e);
@@ -52,11 +52,7 @@
 
 package cgl.imr.samples.pagerank;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
@@ -83,16 +79,10 @@ import cgl.imr.types.IntKey;
 
 public class PageRankMapTask implements MapTask {
 
-	// data structure of one item of adjacency matrix
-	public class UrlData {
-		public int index;
-		public ArrayList<Integer> urls;
-	}
-
 	private FileData fileData;
 	private int numUrls; // number of urls of all tasks
 	private int numUrlsInTask; // number of urls of current map task
-	private UrlData[] UrlsData; // the adjacency matrix of all urls < --- FOR THIS PARTITION 
+	private UrlAdjacency adjacency; // the adjacency matrix of this partition, in CSR layout
 
 	public void close() throws TwisterException {
 	}
@@ -157,27 +147,10 @@ public class PageRankMapTask implements MapTask {
 
 	// construct the adjacency matrix of the partitioned data
 	public void loadDataFromFile(String fileName) throws IOException {
-		File file = new File(fileName);
-		BufferedReader reader = new BufferedReader(new FileReader(file));
-		String inputLine = reader.readLine();
-		this.numUrlsInTask = Integer.parseInt(inputLine); // num of urls that
-															// current map task
-															// have
-		UrlsData = new UrlData[numUrlsInTask];
-		String[] vectorValues;
-
-		//each UrlsData entry contains a link's index, and then that link's target indices. 
-		for (int i = 0; i < numUrlsInTask; i++) {
-			UrlsData[i] = new UrlData();
-			UrlsData[i].urls = new ArrayList<Integer>();
-			inputLine = reader.readLine();
-			vectorValues = inputLine.split(" ");
-			UrlsData[i].index = Integer.parseInt(vectorValues[0]);
-			for (int j = 1; j < vectorValues.length; j++) {
-				UrlsData[i].urls.add(Integer.valueOf(vectorValues[j]));
-			}// end for j
-		}// end for i
-		reader.close();
+		adjacency = PartitionTextParser.parse(fileName);
+		this.numUrlsInTask = adjacency.numRows; // num of urls that
+												// current map task
+												// have
 	}// end loadDataFromFile
 
 	public void map(MapOutputCollector collector, Key key, Value val)
@@ -237,15 +210,20 @@ public class PageRankMapTask implements MapTask {
 	            int fromUrl, toUrl;
 	            double[][] tmpPageRank = decompress(tmpDvd);
 	            double[][] newPageRank = new double[numUrls][2];
+	            // row i links urls[i] to targets[offsets[i] .. offsets[i + 1])
+	            int[] urls = adjacency.urls;
+	            int[] offsets = adjacency.offsets;
+	            int[] targets = adjacency.targets;
 	            for (int i = 0; i < numUrlsInTask; i++) {
-	                    fromUrl = UrlsData[i].index;
-	                    for (int j = 0; j < UrlsData[i].urls.size(); j++) {
-	                            toUrl = (UrlsData[i].urls.get(j)).intValue();
+	                    fromUrl = urls[i];
+	                    int outDegree = offsets[i + 1] - offsets[i];
+	                    for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+	                            toUrl = targets[j];
 	                            urlsSet.add(toUrl);
 	                            newPageRank[toUrl][1] += tmpPageRank[fromUrl][1]
-	                                            / UrlsData[i].urls.size();
+	                                            / outDegree;
 	                    }// end for j
-	                    if (UrlsData[i].urls.size() == 0)
+	                    if (outDegree == 0)
 	                            tanglingProbSum += tmpPageRank[fromUrl][1];
 	            }// end for i
 	            tmpPageRank = null;
@@ -0,0 +1,154 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.samples.pagerank;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+ * Parser for partitions in the text adjacency format: the number of urls on
+ * the first line, then one "index target target ..." line per url.
+ *
+ * The file is read through a FileChannel in large blocks and the digits are
+ * decoded straight into the growable int arrays of a UrlAdjacency, so no
+ * String, String[] or Integer is created per line or per link. A number may
+ * span two blocks; the decoder state simply carries over.
+ *
+ * This variant is built on its own, so this is a copy of the parser at the
+ * top of the samples; keep the two in step.
+ */
+
+public class PartitionTextParser {
+
+	private static final int BLOCK_SIZE = 1 << 22;
+
+	public static UrlAdjacency parse(String fileName) throws IOException {
+		FileInputStream stream = new FileInputStream(fileName);
+		try {
+			FileChannel channel = stream.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BLOCK_SIZE,
+					Math.max(channel.size(), 1)));
+			byte[] bytes = buffer.array();
+			// a link takes at least two bytes of text, most take far more
+			long edgesHint = Math.min(channel.size() / 8, Integer.MAX_VALUE - 8);
+
+			UrlAdjacency adjacency = null;
+			int numUrlsInFile = -1;
+			int value = 0;
+			boolean inNumber = false;
+			boolean negative = false;
+			int field = 0; // position of the next number within its line
+
+			while (channel.read(buffer) != -1) {
+				int length = buffer.position();
+				for (int i = 0; i < length; i++) {
+					int c = bytes[i];
+					if (c >= '0' && c <= '9') {
+						value = value * 10 + (c - '0');
+						inNumber = true;
+						continue;
+					}
+					if (c == '-') {
+						negative = true;
+						continue;
+					}
+					if (inNumber) {
+						int number = negative ? -value : value;
+						if (adjacency == null) {
+							numUrlsInFile = number;
+							adjacency = new UrlAdjacency(numUrlsInFile,
+									(int) edgesHint);
+						} else if (field == 0) {
+							if (adjacency.numRows == numUrlsInFile) {
+								adjacency.finish();
+								return adjacency; // ignore anything past the last url
+							}
+							adjacency.addRow(number);
+							field++;
+						} else {
+							adjacency.addTarget(number);
+						}
+						value = 0;
+						inNumber = false;
+						negative = false;
+					}
+					if (c == '\n') {
+						field = 0;
+					}
+				}
+				buffer.clear();
+			}
+			if (inNumber) {
+				int number = negative ? -value : value;
+				if (adjacency == null) {
+					adjacency = new UrlAdjacency(number, 0);
+				} else if (field == 0) {
+					if (adjacency.numRows < numUrlsInFile) {
+						adjacency.addRow(number);
+					}
+				} else {
+					adjacency.addTarget(number);
+				}
+			}
+			if (adjacency == null) {
+				throw new IOException("Empty partition file " + fileName);
+			}
+			adjacency.finish();
+			return adjacency;
+		} finally {
+			stream.close();
+		}
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.samples.pagerank;
+
+import java.util.Arrays;
+
+/*
+ * Adjacency matrix of one url partition, stored in compressed sparse row
+ * (CSR) layout. Row i is the i-th url of the partition file: its global
+ * index is urls[i] and its out-links are targets[offsets[i]] up to (but not
+ * including) targets[offsets[i + 1]]. Everything is held in primitive
+ * arrays so a resident partition costs 4 bytes per edge and no per-url
+ * objects.
+ *
+ * Rows are appended with addRow()/addTarget() and the structure is sealed
+ * with finish(), which computes the per-row 1/outDegree and the list of
+ * dangling urls.
+ *
+ * This variant is built on its own, so this is the part of the UrlAdjacency
+ * at the top of the samples that the parser and the map task need.
+ */
+
+public class UrlAdjacency {
+
+	public int numRows; // number of urls of the partition
+	public int numEdges; // number of out-links of the partition
+	public int[] urls; // global "from" index of each row
+	public int[] offsets; // row i spans targets[offsets[i] .. offsets[i+1])
+	public int[] targets; // global "to" index of each out-link
+	public double[] invOutDegree; // 1 / out-degree of each row, 0 if dangling
+	public int[] danglingUrls; // global index of the urls without out-links
+
+	public UrlAdjacency(int numRows, int numEdgesHint) {
+		this.urls = new int[numRows];
+		this.offsets = new int[numRows + 1];
+		this.targets = new int[Math.max(numEdgesHint, 16)];
+		this.numRows = 0;
+		this.numEdges = 0;
+	}
+
+	// wrap already built CSR arrays, e.g. the sections of a binary partition file
+	public UrlAdjacency(int[] urls, int[] offsets, int[] targets) {
+		this.urls = urls;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.numRows = urls.length;
+		this.numEdges = targets.length;
+	}
+
+	// start a new row for the url with the given global index
+	public void addRow(int url) {
+		if (numRows == urls.length) {
+			urls = grow(urls, urls.length + 1);
+			offsets = Arrays.copyOf(offsets, urls.length + 1);
+		}
+		urls[numRows] = url;
+		numRows++;
+		offsets[numRows] = numEdges;
+	}
+
+	// append an out-link to the row added last
+	public void addTarget(int url) {
+		if (numEdges == targets.length) {
+			targets = grow(targets, numEdges + 1);
+		}
+		targets[numEdges++] = url;
+		offsets[numRows] = numEdges;
+	}
+
+	public int outDegree(int row) {
+		return offsets[row + 1] - offsets[row];
+	}
+
+	/*
+	 * Trim the arrays to their final size and precompute the values the map
+	 * kernel needs on every iteration.
+	 */
+	public void finish() {
+		if (urls.length != numRows) {
+			urls = Arrays.copyOf(urls, numRows);
+		}
+		if (offsets.length != numRows + 1) {
+			offsets = Arrays.copyOf(offsets, numRows + 1);
+		}
+		if (targets.length != numEdges) {
+			targets = Arrays.copyOf(targets, numEdges);
+		}
+		invOutDegree = new double[numRows];
+		int numDangling = 0;
+		for (int i = 0; i < numRows; i++) {
+			int degree = outDegree(i);
+			if (degree == 0) {
+				numDangling++;
+			} else {
+				invOutDegree[i] = 1.0d / degree;
+			}
+		}
+		danglingUrls = new int[numDangling];
+		numDangling = 0;
+		for (int i = 0; i < numRows; i++) {
+			if (offsets[i] == offsets[i + 1]) {
+				danglingUrls[numDangling++] = urls[i];
+			}
+		}
+	}
+
+	private static int[] grow(int[] array, int minLength) {
+		return Arrays.copyOf(array,
+				Math.max(minLength, array.length + (array.length >> 1)));
+	}
+}
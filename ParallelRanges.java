@@ -0,0 +1,120 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.samples.pagerank;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Runs loops over index ranges on a fork-join pool shared by all the tasks
+ * of a Twister daemon, so several mappers in one JVM do not each start a
+ * thread per core. The ranges are fixed by the caller, never by the number
+ * of idle threads, so every chunk always covers the same indices and
+ * results that are merged per chunk are reproducible.
+ */
+
+public class ParallelRanges {
+
+	public interface Body {
+		void run(int chunk, int from, int to);
+	}
+
+	private static ForkJoinPool pool;
+
+	public static synchronized ForkJoinPool pool() {
+		if (pool == null) {
+			pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		}
+		return pool;
+	}
+
+	// split [0, length) into numChunks contiguous ranges of nearly equal size
+	public static int[] split(int length, int numChunks) {
+		int[] bounds = new int[numChunks + 1];
+		for (int i = 0; i <= numChunks; i++) {
+			bounds[i] = (int) ((long) length * i / numChunks);
+		}
+		return bounds;
+	}
+
+	// run body once per chunk, chunk c covering [bounds[c], bounds[c + 1])
+	public static void run(final int[] bounds, final Body body) {
+		int numChunks = bounds.length - 1;
+		if (numChunks == 1) {
+			body.run(0, bounds[0], bounds[1]);
+			return;
+		}
+		final List<RecursiveAction> actions = new ArrayList<RecursiveAction>(
+				numChunks);
+		for (int c = 0; c < numChunks; c++) {
+			final int chunk = c;
+			actions.add(new RecursiveAction() {
+				protected void compute() {
+					body.run(chunk, bounds[chunk], bounds[chunk + 1]);
+				}
+			});
+		}
+		pool().invoke(new RecursiveAction() {
+			protected void compute() {
+				ForkJoinTask.invokeAll(actions);
+			}
+		});
+	}
+
+	public static void run(int length, int numChunks, Body body) {
+		run(split(length, Math.max(1, Math.min(numChunks, length))), body);
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.samples.pagerank;
+
+/**
+ * Converts a partition file from the text adjacency format (the number of
+ * urls on the first line, then one "index target target ..." line per url)
+ * into a BinaryPartitionFile that PageRankMapTask2 can memory map.
+ */
+
+public class PartitionFileConverter {
+
+	public static void main(String[] args) throws Exception {
+		if (args.length != 2 && args.length != 3) {
+			String errorReport = "PartitionFileConverter: the Correct arguments are \n"
+					+ "java cgl.imr.samples.pagerank.PartitionFileConverter "
+					+ "[text partition file][binary partition file][varint (true|false), optional]";
+			System.out.println(errorReport);
+			System.exit(0);
+		}
+		String inputFile = args[0];
+		String outputFile = args[1];
+		boolean varintTargets = args.length == 3
+				&& Boolean.parseBoolean(args[2]);
+
+		double beginTime = System.currentTimeMillis();
+		UrlAdjacency adjacency = PartitionTextParser.parse(inputFile);
+		BinaryPartitionFile.write(adjacency, outputFile, varintTargets);
+		double endTime = System.currentTimeMillis();
+		System.out.println("[log] Converted " + adjacency.numRows + " urls and "
+				+ adjacency.numEdges + " links from " + inputFile + " to "
+				+ outputFile + " in " + (endTime - beginTime) / 1000
+				+ " seconds.");
+		System.exit(0);
+	}
+}
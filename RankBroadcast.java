@@ -0,0 +1,162 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.samples.pagerank;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import cgl.imr.base.SerializationException;
+
+/*
+ * Rank vector broadcast to the map tasks when PageRank2 runs with a delta
+ * broadcast threshold. The mappers keep their own copy of the rank vector
+ * across iterations and apply each broadcast to it.
+ *
+ * A FULL broadcast carries all numUrls ranks, and in the shift field the
+ * common teleport and dangling term itself. A DELTA broadcast carries a
+ * uniform shift that is added to every rank (the change of that term)
+ * followed by the index and new value of each rank that moved by more than
+ * the threshold.
+ *
+ *   int type, int numUrls, double shift, int numEntries,
+ *   FULL:  double[numUrls]
+ *   DELTA: int[numEntries] indices, double[numEntries] values
+ */
+
+public class RankBroadcast {
+
+	public static final int FULL = 0;
+	public static final int DELTA = 1;
+
+	public static final int HEADER_SIZE = 20;
+
+	public int type;
+	public int numUrls;
+	public double shift;
+	public int numEntries;
+	public int[] indices;
+	public double[] values;
+
+	public RankBroadcast() {
+	}
+
+	public static RankBroadcast full(double[] ranks, double uniformRank) {
+		RankBroadcast bcast = new RankBroadcast();
+		bcast.type = FULL;
+		bcast.numUrls = ranks.length;
+		bcast.shift = uniformRank;
+		bcast.numEntries = ranks.length;
+		bcast.values = ranks;
+		return bcast;
+	}
+
+	public static RankBroadcast delta(int numUrls, double shift,
+			int numEntries, int[] indices, double[] values) {
+		RankBroadcast bcast = new RankBroadcast();
+		bcast.type = DELTA;
+		bcast.numUrls = numUrls;
+		bcast.shift = shift;
+		bcast.numEntries = numEntries;
+		bcast.indices = indices;
+		bcast.values = values;
+		return bcast;
+	}
+
+	// bring a mapper's copy of the rank vector up to date
+	public void applyTo(double[] ranks) {
+		if (type == FULL) {
+			System.arraycopy(values, 0, ranks, 0, numUrls);
+			return;
+		}
+		if (shift != 0) {
+			for (int i = 0; i < numUrls; i++) {
+				ranks[i] += shift;
+			}
+		}
+		for (int i = 0; i < numEntries; i++) {
+			ranks[indices[i]] = values[i];
+		}
+	}
+
+	public byte[] getBytes() {
+		int size = HEADER_SIZE
+				+ (type == FULL ? 8 * numUrls : 12 * numEntries);
+		ByteBuffer buffer = ByteBuffer.allocate(size).order(
+				ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(type).putInt(numUrls).putDouble(shift).putInt(numEntries);
+		if (type == DELTA) {
+			buffer.asIntBuffer().put(indices, 0, numEntries);
+			buffer.position(buffer.position() + 4 * numEntries);
+		}
+		buffer.asDoubleBuffer().put(values, 0, numEntries);
+		return buffer.array();
+	}
+
+	public void fromBytes(byte[] bytes) throws SerializationException {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		type = buffer.getInt();
+		numUrls = buffer.getInt();
+		shift = buffer.getDouble();
+		numEntries = buffer.getInt();
+		if (type == DELTA) {
+			indices = new int[numEntries];
+			buffer.asIntBuffer().get(indices);
+			buffer.position(buffer.position() + 4 * numEntries);
+		} else if (type != FULL) {
+			throw new SerializationException("Unknown rank broadcast type "
+					+ type);
+		}
+		values = new double[numEntries];
+		buffer.asDoubleBuffer().get(values);
+	}
+}
@@ -0,0 +1,346 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+package cgl.imr.samples.pagerank;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import cgl.imr.base.SerializationException;
+
+/*
+ * Wire encodings of the serialized rank vectors (RankVector) and broadcasts
+ * (RankBroadcast). An encoded payload is an envelope around the plain one:
+ *
+ *   int magic, int codec, int replyCodec, int plainLength,
+ *   int headerLength, int numIndices, int numValues, int bodyLength,
+ *   int rawBodyLength, int 0, header bytes (copied as they are), body
+ *
+ * The body holds the indices (sparse entries) and the values of the plain
+ * payload. With VARINT_INDICES the indices are zig-zag varint deltas from
+ * the previous index, otherwise 4-byte ints. Values are 8-byte doubles,
+ * 4-byte floats with FLOAT32, or with SCALED a double scale followed by
+ * zig-zag varints of round(value * scale); the last two lose precision and
+ * are meant for early iterations. With LZ4 the body is compressed with
+ * BlockCompressor.
+ *
+ * decode() gives back the plain payload and passes plain payloads through,
+ * so every reader can decode whatever it gets. replyCodec lets the driver
+ * tell the map tasks, inside the broadcast, how to encode their output.
+ */
+
+public class RankCodec {
+
+	public static final int MAGIC = 0x52563143; // "CV1R" read little endian
+
+	public static final int NONE = 0;
+	public static final int VARINT_INDICES = 1;
+	public static final int FLOAT32 = 2;
+	public static final int SCALED = 4;
+	public static final int LZ4 = 8;
+
+	public static final int LOSSY = FLOAT32 | SCALED;
+
+	private static final int ENVELOPE_SIZE = 40;
+
+	private static final String[] NAMES = { "varint", "float32", "scaled",
+			"lz4" };
+
+	// "none" or names joined by '+', e.g. "varint+lz4"
+	public static int parse(String codec) {
+		int flags = NONE;
+		if (codec.equals("none")) {
+			return flags;
+		}
+		for (String name : codec.split("\\+")) {
+			int flag = 0;
+			for (int i = 0; i < NAMES.length; i++) {
+				if (NAMES[i].equals(name.trim())) {
+					flag = 1 << i;
+				}
+			}
+			if (flag == 0) {
+				throw new IllegalArgumentException("Unknown codec " + name);
+			}
+			flags |= flag;
+		}
+		if ((flags & LOSSY) == LOSSY) {
+			throw new IllegalArgumentException(
+					"float32 and scaled cannot be combined");
+		}
+		return flags;
+	}
+
+	public static String toString(int codec) {
+		StringBuilder name = new StringBuilder();
+		for (int i = 0; i < NAMES.length; i++) {
+			if ((codec & (1 << i)) != 0) {
+				name.append(name.length() == 0 ? "" : "+").append(NAMES[i]);
+			}
+		}
+		return name.length() == 0 ? "none" : name.toString();
+	}
+
+	public static boolean isEncoded(byte[] bytes) {
+		return bytes.length >= ENVELOPE_SIZE && intAt(bytes, 0) == MAGIC;
+	}
+
+	public static int codecOf(byte[] bytes) {
+		return isEncoded(bytes) ? intAt(bytes, 4) : NONE;
+	}
+
+	public static int replyCodecOf(byte[] bytes) {
+		return isEncoded(bytes) ? intAt(bytes, 8) : NONE;
+	}
+
+	/*
+	 * Encode a serialized RankVector or RankBroadcast. The envelope is
+	 * written even when codec is NONE, so it can carry replyCodec.
+	 */
+	public static byte[] encode(byte[] plain, int codec, int replyCodec)
+			throws SerializationException {
+		int[] layout = layout(plain);
+		int headerLength = layout[0];
+		int numIndices = layout[1];
+		int numValues = layout[2];
+		ByteBuffer in = ByteBuffer.wrap(plain).order(ByteOrder.LITTLE_ENDIAN);
+
+		byte[] body = new byte[5 * numIndices + 10 * numValues + 8];
+		int position = 0;
+		int indices = headerLength;
+		if ((codec & VARINT_INDICES) != 0) {
+			int previous = 0;
+			for (int i = 0; i < numIndices; i++) {
+				int index = in.getInt(indices + 4 * i);
+				position = writeVarint(body, position, zigZag(index - previous));
+				previous = index;
+			}
+		} else {
+			System.arraycopy(plain, indices, body, position, 4 * numIndices);
+			position += 4 * numIndices;
+		}
+		int values = headerLength + 4 * numIndices;
+		if ((codec & FLOAT32) != 0) {
+			ByteBuffer out = ByteBuffer.wrap(body).order(ByteOrder.LITTLE_ENDIAN);
+			for (int i = 0; i < numValues; i++) {
+				out.putFloat(position, (float) in.getDouble(values + 8 * i));
+				position += 4;
+			}
+		} else if ((codec & SCALED) != 0) {
+			double max = 0;
+			for (int i = 0; i < numValues; i++) {
+				max = Math.max(max, Math.abs(in.getDouble(values + 8 * i)));
+			}
+			// the largest value maps to 2^31, a 5 byte varint at most
+			double scale = max == 0 ? 1 : 2147483648.0 / max;
+			ByteBuffer.wrap(body).order(ByteOrder.LITTLE_ENDIAN).putDouble(
+					position, scale);
+			position += 8;
+			for (int i = 0; i < numValues; i++) {
+				long quantum = Math.round(in.getDouble(values + 8 * i) * scale);
+				position = writeVarint(body, position, zigZag(quantum));
+			}
+		} else {
+			System.arraycopy(plain, values, body, position, 8 * numValues);
+			position += 8 * numValues;
+		}
+		int rawBodyLength = position;
+
+		int bodyLength = rawBodyLength;
+		byte[] encoded;
+		if ((codec & LZ4) != 0) {
+			encoded = new byte[ENVELOPE_SIZE + headerLength
+					+ BlockCompressor.maxCompressedLength(rawBodyLength)];
+			bodyLength = BlockCompressor.compress(body, 0, rawBodyLength,
+					encoded, ENVELOPE_SIZE + headerLength)
+					- ENVELOPE_SIZE - headerLength;
+		} else {
+			encoded = new byte[ENVELOPE_SIZE + headerLength + rawBodyLength];
+			System.arraycopy(body, 0, encoded, ENVELOPE_SIZE + headerLength,
+					rawBodyLength);
+		}
+		ByteBuffer out = ByteBuffer.wrap(encoded).order(ByteOrder.LITTLE_ENDIAN);
+		out.putInt(MAGIC).putInt(codec).putInt(replyCodec).putInt(plain.length)
+				.putInt(headerLength).putInt(numIndices).putInt(numValues)
+				.putInt(bodyLength).putInt(rawBodyLength).putInt(0);
+		out.put(plain, 0, headerLength);
+		int length = ENVELOPE_SIZE + headerLength + bodyLength;
+		if (length == encoded.length) {
+			return encoded;
+		}
+		byte[] trimmed = new byte[length];
+		System.arraycopy(encoded, 0, trimmed, 0, length);
+		return trimmed;
+	}
+
+	// the plain payload; plain payloads are returned as they are
+	public static byte[] decode(byte[] bytes) throws SerializationException {
+		if (!isEncoded(bytes)) {
+			return bytes;
+		}
+		ByteBuffer in = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		int codec = in.getInt(4);
+		int plainLength = in.getInt(12);
+		int headerLength = in.getInt(16);
+		int numIndices = in.getInt(20);
+		int numValues = in.getInt(24);
+		int bodyLength = in.getInt(28);
+		int rawBodyLength = in.getInt(32);
+		// a BroadcastStamp may follow the encoded vector
+		if (headerLength + 4L * numIndices + 8L * numValues != plainLength
+				|| ENVELOPE_SIZE + headerLength + bodyLength > bytes.length) {
+			throw new SerializationException("Corrupt encoded rank vector");
+		}
+		byte[] body = bytes;
+		int position = ENVELOPE_SIZE + headerLength;
+		if ((codec & LZ4) != 0) {
+			body = new byte[rawBodyLength];
+			BlockCompressor.decompress(bytes, position, bodyLength, body, 0,
+					rawBodyLength);
+			position = 0;
+		}
+
+		byte[] plain = new byte[plainLength];
+		System.arraycopy(bytes, ENVELOPE_SIZE, plain, 0, headerLength);
+		ByteBuffer out = ByteBuffer.wrap(plain).order(ByteOrder.LITTLE_ENDIAN);
+		ByteBuffer bodyBuffer = ByteBuffer.wrap(body).order(
+				ByteOrder.LITTLE_ENDIAN);
+		int indices = headerLength;
+		int[] cursor = new int[] { position };
+		try {
+			if ((codec & VARINT_INDICES) != 0) {
+				int index = 0;
+				for (int i = 0; i < numIndices; i++) {
+					index += (int) unZigZag(readVarint(body, cursor));
+					out.putInt(indices + 4 * i, index);
+				}
+			} else {
+				System.arraycopy(body, cursor[0], plain, indices, 4 * numIndices);
+				cursor[0] += 4 * numIndices;
+			}
+			int values = headerLength + 4 * numIndices;
+			if ((codec & FLOAT32) != 0) {
+				for (int i = 0; i < numValues; i++) {
+					out.putDouble(values + 8 * i, bodyBuffer.getFloat(cursor[0]));
+					cursor[0] += 4;
+				}
+			} else if ((codec & SCALED) != 0) {
+				double scale = bodyBuffer.getDouble(cursor[0]);
+				cursor[0] += 8;
+				for (int i = 0; i < numValues; i++) {
+					out.putDouble(values + 8 * i,
+							unZigZag(readVarint(body, cursor)) / scale);
+				}
+			} else {
+				System.arraycopy(body, cursor[0], plain, values, 8 * numValues);
+			}
+		} catch (IndexOutOfBoundsException e) {
+			throw new SerializationException("Corrupt encoded rank vector");
+		}
+		return plain;
+	}
+
+	// header length, number of indices and number of values of a plain payload
+	private static int[] layout(byte[] plain) throws SerializationException {
+		int type = intAt(plain, 0);
+		if (type == RankVector.DENSE) {
+			return new int[] { RankVector.HEADER_SIZE, 0,
+					RankVector.lengthOf(plain) };
+		}
+		if (type == RankVector.SPARSE) {
+			int numEntries = intAt(plain, 16);
+			return new int[] { RankVector.HEADER_SIZE, numEntries, numEntries };
+		}
+		if (type == RankBroadcast.FULL || type == RankBroadcast.DELTA) {
+			int numEntries = intAt(plain, 16);
+			return new int[] { RankBroadcast.HEADER_SIZE,
+					type == RankBroadcast.DELTA ? numEntries : 0, numEntries };
+		}
+		throw new SerializationException("Not a rank vector or broadcast");
+	}
+
+	private static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static int writeVarint(byte[] bytes, int position, long value) {
+		while ((value & ~0x7FL) != 0) {
+			bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		bytes[position++] = (byte) value;
+		return position;
+	}
+
+	private static long readVarint(byte[] bytes, int[] cursor) {
+		long value = 0;
+		int shift = 0;
+		int position = cursor[0];
+		byte b;
+		do {
+			b = bytes[position++];
+			value |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		cursor[0] = position;
+		return value;
+	}
+
+	private static int intAt(byte[] bytes, int position) {
+		return (bytes[position] & 0xff) | ((bytes[position + 1] & 0xff) << 8)
+				| ((bytes[position + 2] & 0xff) << 16)
+				| ((bytes[position + 3] & 0xff) << 24);
+	}
+}
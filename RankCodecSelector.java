@@ -0,0 +1,150 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+package cgl.imr.samples.pagerank;
+
+import java.util.Map;
+
+import cgl.imr.base.SerializationException;
+
+/*
+ * Driver side choice of the RankCodec for the broadcast and, through its
+ * replyCodec, for the map outputs of the same iteration.
+ *
+ * With codec=auto the candidates are tried on the broadcast every
+ * PROBE_INTERVAL iterations and the one with the lowest encode time plus
+ * transfer time at the configured bandwidth is kept until the next probe.
+ * The map outputs are sparse slices more often than not, so they always get
+ * varint indices on top of the chosen codec. A lossy value encoding is only
+ * added while the error between iterations is above codec.lossy.error, and
+ * never to delta broadcasts, whose mappers must hold exactly the values the
+ * driver assumes they hold.
+ */
+
+public class RankCodecSelector {
+
+	private static final int PROBE_INTERVAL = 8;
+
+	private static final int[] CANDIDATES = { RankCodec.NONE,
+			RankCodec.VARINT_INDICES, RankCodec.LZ4,
+			RankCodec.VARINT_INDICES | RankCodec.LZ4 };
+
+	private final boolean auto;
+	private final int fixedCodec; // lossless part of a fixed codec
+	private final int lossyCodec; // FLOAT32, SCALED or NONE
+	private final double lossyError;
+	private final double bytesPerNano;
+	private int codec; // the last choice
+	private int iterations;
+
+	public RankCodecSelector(Map<String, String> options) {
+		String spec = PageRankOptions.getString(options,
+				PageRankOptions.CODEC, "none");
+		auto = spec.equals("auto");
+		int parsed = auto ? RankCodec.NONE : RankCodec.parse(spec);
+		fixedCodec = parsed & ~RankCodec.LOSSY;
+		lossyCodec = RankCodec.parse(PageRankOptions.getString(options,
+				PageRankOptions.CODEC_LOSSY,
+				RankCodec.toString(parsed & RankCodec.LOSSY)))
+				& RankCodec.LOSSY;
+		lossyError = PageRankOptions.getDouble(options,
+				PageRankOptions.CODEC_LOSSY_ERROR, 1E-6);
+		bytesPerNano = PageRankOptions.getDouble(options,
+				PageRankOptions.CODEC_BANDWIDTH, 100) * 1E6 / 1E9;
+		codec = fixedCodec;
+	}
+
+	// a codec was asked for, otherwise payloads go out plain
+	public static boolean isEnabled(Map<String, String> options) {
+		return !PageRankOptions.getString(options, PageRankOptions.CODEC,
+				"none").equals("none");
+	}
+
+	/*
+	 * @parameter payload - the plain broadcast
+	 * 
+	 * @parameter fullBroadcast - payload holds the whole rank vector, so it
+	 * may be encoded lossily
+	 * 
+	 * @parameter error - the error between the last two iterations,
+	 * Double.MAX_VALUE before the first
+	 */
+	public byte[] encode(byte[] payload, boolean fullBroadcast, double error)
+			throws SerializationException {
+		int lossy = error > lossyError ? lossyCodec : RankCodec.NONE;
+		int replyCodec = codec | RankCodec.VARINT_INDICES | lossy;
+		int bcastCodec = codec | (fullBroadcast ? lossy : RankCodec.NONE);
+		if (!auto || iterations++ % PROBE_INTERVAL != 0) {
+			return RankCodec.encode(payload, bcastCodec, replyCodec);
+		}
+		byte[] best = null;
+		double bestCost = Double.MAX_VALUE;
+		for (int i = 0; i < CANDIDATES.length; i++) {
+			int candidate = CANDIDATES[i]
+					| (fullBroadcast ? lossy : RankCodec.NONE);
+			long start = System.nanoTime();
+			byte[] encoded = RankCodec.encode(payload, candidate,
+					CANDIDATES[i] | RankCodec.VARINT_INDICES | lossy);
+			double cost = (System.nanoTime() - start) + encoded.length
+					/ bytesPerNano;
+			if (cost < bestCost) {
+				best = encoded;
+				bestCost = cost;
+				codec = CANDIDATES[i];
+			}
+		}
+		return best;
+	}
+
+	public int getCodec() {
+		return codec;
+	}
+}
@@ -0,0 +1,267 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+package cgl.imr.samples.pagerank;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+
+/*
+ * Driver side convergence acceleration. The last iterates are kept in
+ * direct (off heap) buffers, and every interval iterations the newest
+ * iterate is replaced by an extrapolation from them, renormalised to sum
+ * to one:
+ *
+ *   aitken     per url Aitken delta squared over the last 3 iterates, only
+ *              where the url is converging monotonically
+ *   quadratic  quadratic extrapolation over the last 4 iterates (Kamvar et
+ *              al., "Extrapolation methods for accelerating PageRank
+ *              computations"), with the coefficients fitted by least
+ *              squares over all urls
+ *
+ * Both extrapolations are on the scale of the newest iterate. When one
+ * would make some rank zero or negative the model does not hold, and the
+ * iterate is left as it is. The history starts over after each
+ * extrapolation.
+ *
+ * An extrapolation is only a guess, so the plain iterate it replaced is
+ * kept. It is accepted when the iteration run from it changes the ranks
+ * less (in L1) than the iteration before it did; otherwise the plain
+ * iterate is put back and the interval doubles. Whether extrapolating pays
+ * depends on the graph: on some it takes more iterations than it saves.
+ */
+
+public class RankExtrapolator {
+
+	public static final String AITKEN = "aitken";
+	public static final String QUADRATIC = "quadratic";
+
+	// what next() did to the ranks
+	public static final int KEPT = 0;
+	public static final int EXTRAPOLATED = 1;
+	public static final int REVERTED = 2; // back to the last plain iterate
+
+	private final boolean quadratic;
+	private int interval;
+	private final int numUrls;
+	private final DoubleBuffer[] history; // ring of the last iterates
+	private int numIterates; // iterates in the history
+	private int iterations;
+	private final DoubleBuffer plain; // the iterate the last extrapolation replaced
+	private double plainChange; // L1 change of the iteration that gave plain
+	private boolean pending; // the last extrapolation is still to be judged
+
+	public RankExtrapolator(int numUrls, String method, int interval) {
+		if (!method.equals(AITKEN) && !method.equals(QUADRATIC)) {
+			throw new IllegalArgumentException("Unknown extrapolation "
+					+ method);
+		}
+		this.quadratic = method.equals(QUADRATIC);
+		this.interval = interval;
+		this.numUrls = numUrls;
+		// the newest iterate is the caller's array, the ring holds the rest
+		history = new DoubleBuffer[quadratic ? 3 : 2];
+		for (int i = 0; i < history.length; i++) {
+			history[i] = ByteBuffer.allocateDirect(8 * numUrls)
+					.order(ByteOrder.nativeOrder()).asDoubleBuffer();
+		}
+		plain = ByteBuffer.allocateDirect(8 * numUrls)
+				.order(ByteOrder.nativeOrder()).asDoubleBuffer();
+	}
+
+	/*
+	 * Take the ranks of the next iteration. If they came from an
+	 * extrapolation that did not pay, they are replaced by the plain iterate
+	 * again; otherwise they are extrapolated in place when it is time to.
+	 * 
+	 * @return KEPT, EXTRAPOLATED or REVERTED
+	 */
+	public int next(double[] ranks) {
+		iterations++;
+		int action = KEPT;
+		if (pending) {
+			pending = false;
+			// history[0] is the extrapolated vector these ranks came from
+			if (!(change(ranks) < plainChange)) {
+				plain.clear();
+				plain.get(ranks);
+				interval *= 2;
+				numIterates = 0;
+				action = REVERTED;
+			}
+		}
+		if (action == KEPT && numIterates == history.length
+				&& iterations % interval == 0) {
+			double change = change(ranks);
+			plain.clear();
+			plain.put(ranks);
+			if (quadratic ? quadratic(ranks) : aitken(ranks)) {
+				normalise(ranks);
+				plainChange = change;
+				pending = true;
+				numIterates = 0;
+				action = EXTRAPOLATED;
+			}
+		}
+		// the oldest buffer takes the newest iterate
+		DoubleBuffer oldest = history[history.length - 1];
+		System.arraycopy(history, 0, history, 1, history.length - 1);
+		history[0] = oldest;
+		oldest.clear();
+		oldest.put(ranks);
+		numIterates = Math.min(numIterates + 1, history.length);
+		return action;
+	}
+
+	public int getInterval() {
+		return interval;
+	}
+
+	// L1 distance of ranks from the previous iterate
+	private double change(double[] ranks) {
+		DoubleBuffer previous = history[0];
+		double sum = 0;
+		for (int i = 0; i < numUrls; i++) {
+			sum += Math.abs(ranks[i] - previous.get(i));
+		}
+		return sum;
+	}
+
+	// the first pass checks the extrapolation, the second applies it
+	private boolean aitken(double[] ranks) {
+		for (int pass = 0; pass < 2; pass++) {
+			for (int i = 0; i < numUrls; i++) {
+				double extrapolated = aitken(ranks[i], history[0].get(i),
+						history[1].get(i));
+				if (pass == 1) {
+					ranks[i] = extrapolated;
+				} else if (!(extrapolated > 0)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private static double aitken(double x2, double x1, double x0) {
+		double d1 = x1 - x0;
+		double d2 = x2 - x1;
+		// monotone and slowing down, so the geometric model holds
+		if (d1 * d2 > 0 && Math.abs(d2) < Math.abs(d1)) {
+			return x2 - d2 * d2 / (d2 - d1);
+		}
+		return x2;
+	}
+
+	/*
+	 * With y_j = x_j - x_{k-3}, fit gamma_1, gamma_2 to minimise
+	 * |gamma_1 y_{k-2} + gamma_2 y_{k-1} + y_k| and take
+	 * (gamma_1 + gamma_2 + 1) x_{k-2} + (gamma_2 + 1) x_{k-1} + x_k, divided
+	 * by the sum of its coefficients to stay on the scale of x_k.
+	 */
+	private boolean quadratic(double[] ranks) {
+		DoubleBuffer xk1 = history[0];
+		DoubleBuffer xk2 = history[1];
+		DoubleBuffer xk3 = history[2];
+		double a11 = 0, a12 = 0, a22 = 0, b1 = 0, b2 = 0;
+		for (int i = 0; i < numUrls; i++) {
+			double base = xk3.get(i);
+			double y1 = xk2.get(i) - base;
+			double y2 = xk1.get(i) - base;
+			double y3 = ranks[i] - base;
+			a11 += y1 * y1;
+			a12 += y1 * y2;
+			a22 += y2 * y2;
+			b1 -= y1 * y3;
+			b2 -= y2 * y3;
+		}
+		double det = a11 * a22 - a12 * a12;
+		if (!(Math.abs(det) > 1E-30 * a11 * a22)) {
+			return false; // the differences are (nearly) parallel
+		}
+		double gamma1 = (b1 * a22 - b2 * a12) / det;
+		double gamma2 = (a11 * b2 - a12 * b1) / det;
+		double beta0 = gamma1 + gamma2 + 1;
+		double beta1 = gamma2 + 1;
+		double scale = beta0 + beta1 + 1;
+		if (!(scale > 0)) {
+			return false;
+		}
+		beta0 /= scale;
+		beta1 /= scale;
+		for (int pass = 0; pass < 2; pass++) {
+			for (int i = 0; i < numUrls; i++) {
+				double extrapolated = beta0 * xk2.get(i) + beta1 * xk1.get(i)
+						+ ranks[i] / scale;
+				if (pass == 1) {
+					ranks[i] = extrapolated;
+				} else if (!(extrapolated > 0)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private void normalise(double[] ranks) {
+		double sum = 0;
+		for (int i = 0; i < numUrls; i++) {
+			sum += ranks[i];
+		}
+		if (sum > 0) {
+			double scale = 1 / sum;
+			for (int i = 0; i < numUrls; i++) {
+				ranks[i] *= scale;
+			}
+		}
+	}
+}
@@ -0,0 +1,231 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.samples.pagerank;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.List;
+
+import cgl.imr.base.SerializationException;
+
+/*
+ * Adds many serialized rank vectors (RankVector, dense or sparse, whole or
+ * sliced) into one flat sum. The sum is cut into url ranges that run in
+ * parallel on the shared fork-join pool; each range is walked in blocks
+ * small enough to stay in cache, and every input is added into the block
+ * before moving on, so the sum is read and written once per block rather
+ * than once per input. Dense inputs are copied block by block into a plain
+ * array first so the adding loop is a simple a[i] += b[i] that the JIT can
+ * vectorize; sparse inputs keep a cursor per range and scatter their
+ * entries.
+ *
+ * Every url is summed over the inputs in list order whatever the number of
+ * ranges, so the result does not depend on the thread count. An optional
+ * BlockVisitor is called on each block once it is complete, which lets the
+ * caller fuse its own pass (e.g. the damping of the combiner) into the
+ * merge while the block is still in cache.
+ */
+
+public class RankMerger {
+
+	public interface BlockVisitor {
+		// sum[from .. to) is final; chunk is the url range it belongs to
+		void visit(int chunk, double[] sum, int from, int to);
+	}
+
+	// 2048 doubles of sum plus 2048 of input, 32KB
+	private static final int BLOCK_SIZE = 2048;
+
+	// ranges per thread, so a range that gets many sparse entries does not
+	// hold up the others
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	public static int numChunks(int numThreads, int length) {
+		long chunks = (long) numThreads * CHUNKS_PER_THREAD;
+		return (int) Math.max(1, Math.min(chunks, length / BLOCK_SIZE));
+	}
+
+	/*
+	 * @parameter values - the serialized vectors to add
+	 * 
+	 * @parameter sum - sum[i] is the rank of url sumOffset + i
+	 * 
+	 * @parameter numChunks - url ranges to split the sum into, see numChunks()
+	 * 
+	 * @parameter visitor - called on every finished block, may be null
+	 */
+	public static void merge(final List<byte[]> values, final double[] sum,
+			final int sumOffset, int numChunks, final BlockVisitor visitor)
+			throws SerializationException {
+		for (int v = 0; v < values.size(); v++) {
+			byte[] bytes = values.get(v);
+			int type = RankVector.typeOf(bytes);
+			int offset = RankVector.offsetOf(bytes);
+			int length = RankVector.lengthOf(bytes);
+			if (offset < sumOffset || offset + length > sumOffset + sum.length) {
+				throw new SerializationException("Rank vector slice of urls "
+						+ offset + ".." + (offset + length) + " added to a sum of "
+						+ sumOffset + ".." + (sumOffset + sum.length));
+			}
+			if (type != RankVector.DENSE && type != RankVector.SPARSE) {
+				throw new SerializationException("Not a serialized rank vector");
+			}
+		}
+		ParallelRanges.run(ParallelRanges.split(sum.length, numChunks),
+				new ParallelRanges.Body() {
+					public void run(int chunk, int from, int to) {
+						mergeRange(values, sum, sumOffset, chunk, from, to,
+								visitor);
+					}
+				});
+	}
+
+	private static void mergeRange(List<byte[]> values, double[] sum,
+			int sumOffset, int chunk, int from, int to, BlockVisitor visitor) {
+		Input[] inputs = new Input[values.size()];
+		for (int v = 0; v < inputs.length; v++) {
+			inputs[v] = new Input(values.get(v), sumOffset + from);
+		}
+		double[] block = new double[BLOCK_SIZE];
+		for (int blockFrom = from; blockFrom < to; blockFrom += BLOCK_SIZE) {
+			int blockTo = Math.min(to, blockFrom + BLOCK_SIZE);
+			for (int v = 0; v < inputs.length; v++) {
+				inputs[v].add(sum, sumOffset, blockFrom, blockTo, block);
+			}
+			if (visitor != null) {
+				visitor.visit(chunk, sum, blockFrom, blockTo);
+			}
+		}
+	}
+
+	// one serialized vector as seen by one url range
+	private static class Input {
+		final boolean dense;
+		final int offset; // first url of the slice
+		final int length;
+		final int numEntries;
+		final DoubleBuffer ranks;
+		final IntBuffer urls;
+		int cursor; // next sparse entry, ascending with the blocks
+
+		Input(byte[] bytes, int firstUrl) {
+			ByteBuffer buffer = ByteBuffer.wrap(bytes).order(
+					ByteOrder.LITTLE_ENDIAN);
+			dense = buffer.getInt(0) == RankVector.DENSE;
+			numEntries = buffer.getInt(16);
+			offset = buffer.getInt(20);
+			length = buffer.getInt(24);
+			if (dense) {
+				ranks = ByteBuffer.wrap(bytes, RankVector.HEADER_SIZE,
+						8 * length).slice().order(ByteOrder.LITTLE_ENDIAN)
+						.asDoubleBuffer();
+				urls = null;
+			} else {
+				urls = ByteBuffer.wrap(bytes, RankVector.HEADER_SIZE,
+						4 * numEntries).slice().order(ByteOrder.LITTLE_ENDIAN)
+						.asIntBuffer();
+				ranks = ByteBuffer.wrap(bytes,
+						RankVector.HEADER_SIZE + 4 * numEntries,
+						8 * numEntries).slice().order(ByteOrder.LITTLE_ENDIAN)
+						.asDoubleBuffer();
+				cursor = firstEntry(firstUrl);
+			}
+		}
+
+		// first sparse entry whose url is >= url
+		private int firstEntry(int url) {
+			int low = 0;
+			int high = numEntries;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (urls.get(middle) < url) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+
+		// add the urls of sum[blockFrom .. blockTo) this input holds
+		void add(double[] sum, int sumOffset, int blockFrom, int blockTo,
+				double[] block) {
+			if (dense) {
+				int start = Math.max(blockFrom + sumOffset, offset);
+				int end = Math.min(blockTo + sumOffset, offset + length);
+				if (start >= end) {
+					return;
+				}
+				int count = end - start;
+				ranks.position(start - offset);
+				ranks.get(block, 0, count);
+				int base = start - sumOffset;
+				for (int i = 0; i < count; i++) {
+					sum[base + i] += block[i];
+				}
+				return;
+			}
+			int endUrl = blockTo + sumOffset;
+			while (cursor < numEntries) {
+				int url = urls.get(cursor);
+				if (url >= endUrl) {
+					break;
+				}
+				sum[url - sumOffset] += ranks.get(cursor);
+				cursor++;
+			}
+		}
+	}
+}
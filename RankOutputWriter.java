@@ -0,0 +1,248 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+package cgl.imr.samples.pagerank;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+ * Writer of the final ranks. The text format is the one PageRank2 has
+ * always written: the number of urls on the first line, then one
+ * "index rank" line per url with the rank laid out as Double.toString()
+ * does. The binary format is a RankVectorFile. init.ranks reads either
+ * back.
+ *
+ * Text lines are formatted into a reused byte buffer, which goes to a
+ * FileChannel a megabyte at a time. The index is formatted by hand and the
+ * rank by a DoubleFormatter, so no String is made per url. With several
+ * threads the urls are split into one
+ * chunk per thread. A first pass measures the text of every chunk, the
+ * prefix sums of the lengths give each chunk its offset in the file, and a
+ * second pass writes the chunks there in parallel. Binary chunks know their
+ * offsets up front and are copied into memory mapped regions of the file.
+ */
+
+public class RankOutputWriter {
+
+	private static final int BUFFER_SIZE = 1 << 20;
+	// an int, a double, ' ' and '\n'
+	private static final int MAX_LINE_LENGTH = 10 + DoubleFormatter.MAX_LENGTH + 2;
+	private static final int MAX_MAPPED_URLS = 1 << 24; // 128 MB per mapped region
+
+	public static void writeText(String fileName, final double[] ranks,
+			int numThreads) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+		try {
+			file.setLength(0);
+			final FileChannel channel = file.getChannel();
+			int numUrls = ranks.length;
+			final int[] bounds = ParallelRanges.split(numUrls,
+					Math.max(1, Math.min(numThreads, numUrls)));
+			int numChunks = bounds.length - 1;
+			byte[] firstLine = (numUrls + "\n").getBytes("US-ASCII");
+			write(channel, ByteBuffer.wrap(firstLine), 0);
+
+			final long[] offsets = new long[numChunks + 1];
+			offsets[0] = firstLine.length;
+			if (numChunks > 1) {
+				ParallelRanges.run(bounds, new ParallelRanges.Body() {
+					public void run(int chunk, int from, int to) {
+						LineFormatter formatter = new LineFormatter(MAX_LINE_LENGTH);
+						long length = 0;
+						for (int i = from; i < to; i++) {
+							formatter.position = 0;
+							formatter.append(i, ranks[i]);
+							length += formatter.position;
+						}
+						offsets[chunk + 1] = length;
+					}
+				});
+				for (int c = 0; c < numChunks; c++) {
+					offsets[c + 1] += offsets[c];
+				}
+			}
+			final IOException[] failure = new IOException[1];
+			ParallelRanges.run(bounds, new ParallelRanges.Body() {
+				public void run(int chunk, int from, int to) {
+					LineFormatter formatter = new LineFormatter(BUFFER_SIZE);
+					ByteBuffer buffer = ByteBuffer.wrap(formatter.bytes);
+					long position = offsets[chunk];
+					try {
+						for (int i = from; i < to; i++) {
+							if (formatter.position > BUFFER_SIZE - MAX_LINE_LENGTH) {
+								buffer.limit(formatter.position).position(0);
+								position += write(channel, buffer, position);
+								formatter.position = 0;
+							}
+							formatter.append(i, ranks[i]);
+						}
+						buffer.limit(formatter.position).position(0);
+						write(channel, buffer, position);
+					} catch (IOException e) {
+						failure[0] = e;
+					}
+				}
+			});
+			if (failure[0] != null) {
+				throw failure[0];
+			}
+		} finally {
+			file.close();
+		}
+	}
+
+	// the sorted selection of top as text, its size on the first line
+	public static void writeTopK(String fileName, TopKSelector top)
+			throws IOException {
+		RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+		try {
+			file.setLength(0);
+			FileChannel channel = file.getChannel();
+			LineFormatter formatter = new LineFormatter(BUFFER_SIZE);
+			ByteBuffer buffer = ByteBuffer.wrap(formatter.bytes);
+			byte[] firstLine = (top.size() + "\n").getBytes("US-ASCII");
+			long position = write(channel, ByteBuffer.wrap(firstLine), 0);
+			for (int i = 0; i < top.size(); i++) {
+				if (formatter.position > BUFFER_SIZE - MAX_LINE_LENGTH) {
+					buffer.limit(formatter.position).position(0);
+					position += write(channel, buffer, position);
+					formatter.position = 0;
+				}
+				formatter.append(top.urlAt(i), top.rankAt(i));
+			}
+			buffer.limit(formatter.position).position(0);
+			write(channel, buffer, position);
+		} finally {
+			file.close();
+		}
+	}
+
+	public static void writeBinary(String fileName, final RankVector ranks,
+			int iteration, double uniformRank, int numThreads)
+			throws IOException {
+		RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+		try {
+			final int numUrls = ranks.numUrls;
+			file.setLength(0);
+			file.setLength(RankVectorFile.HEADER_SIZE + 8L * numUrls);
+			final FileChannel channel = file.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(RankVectorFile.HEADER_SIZE)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			RankVectorFile.putHeader(header, ranks, iteration, uniformRank);
+			header.flip();
+			write(channel, header, 0);
+
+			final IOException[] failure = new IOException[1];
+			ParallelRanges.run(numUrls, numThreads, new ParallelRanges.Body() {
+				public void run(int chunk, int from, int to) {
+					try {
+						for (int start = from; start < to; start += MAX_MAPPED_URLS) {
+							int count = Math.min(to - start, MAX_MAPPED_URLS);
+							MappedByteBuffer region = channel.map(
+									FileChannel.MapMode.READ_WRITE,
+									RankVectorFile.HEADER_SIZE + 8L * start, 8L * count);
+							region.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer()
+									.put(ranks.ranks, start, count);
+							region.force();
+						}
+					} catch (IOException e) {
+						failure[0] = e;
+					}
+				}
+			});
+			if (failure[0] != null) {
+				throw failure[0];
+			}
+		} finally {
+			file.close();
+		}
+	}
+
+	// write all of buffer at position, returns the number of bytes written
+	private static int write(FileChannel channel, ByteBuffer buffer,
+			long position) throws IOException {
+		int length = buffer.remaining();
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+		return length;
+	}
+
+	// formats "index rank\n" lines into bytes, reusing its buffers
+	private static class LineFormatter {
+		final byte[] bytes;
+		final DoubleFormatter rank = new DoubleFormatter();
+		int position;
+
+		LineFormatter(int size) {
+			bytes = new byte[size];
+		}
+
+		void append(int url, double value) {
+			int digits = 1;
+			for (int rest = url / 10; rest > 0; rest /= 10) {
+				digits++;
+			}
+			for (int d = digits - 1, rest = url; d >= 0; d--, rest /= 10) {
+				bytes[position + d] = (byte) ('0' + rest % 10);
+			}
+			position += digits;
+			bytes[position++] = ' ';
+			position = rank.format(value, bytes, position);
+			bytes[position++] = '\n';
+		}
+	}
+}
@@ -0,0 +1,233 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+package cgl.imr.samples.pagerank;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+ * Parser for rank vectors in the text output format of PageRank2: the
+ * number of urls on the first line, then one "index rank" line per url.
+ *
+ * Like PartitionTextParser the file is read through a FileChannel in large
+ * blocks and every number is decoded from the bytes as they come, so no
+ * String is created per line. A rank is decoded into a long of at most 18
+ * significant digits and a power of ten; ranks with up to 15 digits and
+ * exponents Double.toString writes for ranks come out exactly, longer ones
+ * within an ulp or two, which is plenty for a starting vector.
+ */
+
+public class RankTextParser {
+
+	private static final int BLOCK_SIZE = 1 << 22;
+	private static final int MAX_DIGITS = 18; // still fit a long
+
+	private static final double[] POWERS_OF_TEN = { 1E0, 1E1, 1E2, 1E3, 1E4,
+			1E5, 1E6, 1E7, 1E8, 1E9, 1E10, 1E11, 1E12, 1E13, 1E14, 1E15, 1E16,
+			1E17, 1E18, 1E19, 1E20, 1E21, 1E22 };
+
+	/*
+	 * Reads the ranks of the file into ranks. Urls the file does not list
+	 * keep the value they had; urls past the end of ranks are skipped.
+	 * 
+	 * @return the number of ranks read, whether or not they were kept
+	 */
+	public static int parse(String fileName, double[] ranks) throws IOException {
+		FileInputStream stream = new FileInputStream(fileName);
+		try {
+			FileChannel channel = stream.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BLOCK_SIZE,
+					Math.max(channel.size(), 1)));
+			byte[] bytes = buffer.array();
+
+			int numUrlsInFile = -1;
+			int numRanks = 0;
+			int field = 0; // position of the next number within its line
+			long url = 0;
+			// the number being decoded: digits * 10^(scale + exponent)
+			boolean inNumber = false;
+			int numberLength = 0; // characters of the number so far
+			boolean negative = false;
+			long digits = 0;
+			int numDigits = 0;
+			int scale = 0;
+			boolean afterPoint = false;
+			boolean inExponent = false;
+			boolean negativeExponent = false;
+			int exponent = 0;
+			int exponentLength = 0; // characters after the exponent marker
+			int exponentDigits = 0;
+
+			while (channel.read(buffer) != -1) {
+				int length = buffer.position();
+				for (int i = 0; i <= length; i++) {
+					// a final pass with a separator ends the number at the end of the file
+					int c = i < length ? bytes[i] : (channel.position() == channel
+							.size() ? '\n' : -1);
+					if (c == -1) {
+						break;
+					}
+					if (c >= '0' && c <= '9') {
+						numberLength++;
+						if (inExponent) {
+							exponentLength++;
+							exponentDigits++;
+							exponent = Math.min(exponent * 10 + (c - '0'), 100000);
+						} else if (numDigits < MAX_DIGITS) {
+							if (digits > 0 || c != '0') {
+								digits = digits * 10 + (c - '0');
+								numDigits++;
+							}
+							if (afterPoint) {
+								scale--;
+							}
+						} else if (!afterPoint) {
+							scale++; // digits past the precision of a long
+						}
+						inNumber = true;
+						continue;
+					}
+					// a sign only leads the number or its exponent
+					if ((c == '-' || c == '+')
+							&& (inExponent ? exponentLength == 0
+									: numberLength == 0)) {
+						if (inExponent) {
+							negativeExponent = c == '-';
+							exponentLength++;
+						} else {
+							negative = c == '-';
+						}
+						numberLength++;
+						continue;
+					}
+					if (c == '.' && !afterPoint && !inExponent) {
+						afterPoint = true;
+						numberLength++;
+						continue;
+					}
+					if ((c == 'E' || c == 'e') && inNumber && !inExponent) {
+						inExponent = true;
+						numberLength++;
+						continue;
+					}
+					if (c != ' ' && c != '\t' && c != '\r' && c != '\n') {
+						throw new IOException("Unexpected character '" + (char) c
+								+ "' in rank file " + fileName);
+					}
+					if (numberLength > 0
+							&& (!inNumber || inExponent && exponentDigits == 0)) {
+						throw new IOException("Malformed number in rank file "
+								+ fileName);
+					}
+					if (inNumber) {
+						if (numUrlsInFile < 0) {
+							numUrlsInFile = (int) digits;
+						} else if (field == 0) {
+							url = digits;
+							field++;
+						} else if (field == 1) {
+							if (url < ranks.length) {
+								double rank = toDouble(digits, scale
+										+ (negativeExponent ? -exponent : exponent));
+								ranks[(int) url] = negative ? -rank : rank;
+							}
+							numRanks++;
+							field++;
+						}
+						inNumber = false;
+						numberLength = 0;
+						negative = false;
+						digits = 0;
+						numDigits = 0;
+						scale = 0;
+						afterPoint = false;
+						inExponent = false;
+						negativeExponent = false;
+						exponent = 0;
+						exponentLength = 0;
+						exponentDigits = 0;
+					}
+					if (c == '\n') {
+						field = 0;
+					}
+				}
+				buffer.clear();
+			}
+			if (numUrlsInFile < 0) {
+				throw new IOException("Empty rank file " + fileName);
+			}
+			return numRanks;
+		} finally {
+			stream.close();
+		}
+	}
+
+	// digits * 10^exponent, exact while both fit a double exactly
+	private static double toDouble(long digits, int exponent) {
+		if (digits == 0) {
+			return 0;
+		}
+		double value = digits;
+		while (exponent > 22) {
+			value *= 1E22;
+			exponent -= 22;
+		}
+		while (exponent < -22) {
+			value /= 1E22;
+			exponent += 22;
+		}
+		return exponent >= 0 ? value * POWERS_OF_TEN[exponent] : value
+				/ POWERS_OF_TEN[-exponent];
+	}
+}
@@ -0,0 +1,349 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.samples.pagerank;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import cgl.imr.base.SerializationException;
+import cgl.imr.types.DoubleVectorData;
+
+/*
+ * Rank vector of the V2 pipeline: one flat double per url plus the sum of
+ * the ranks of the dangling urls, which the map and reduce tasks carry
+ * alongside the partial ranks. This replaces the numUrls x 1 double[][] of
+ * DoubleVectorData, which costs an array object per url. DoubleVectorData
+ * is only used through toDoubleVectorData()/fromDoubleVectorData() for
+ * code that still expects it.
+ *
+ * A vector may also be a slice of the urls [offset, offset + length): the
+ * map tasks split their output into one slice per reduce task, so each
+ * reducer only sums its own range of the urls. ranks[i] is the rank of url
+ * offset + i.
+ *
+ * Serialized form, little endian:
+ *   int type, int numUrls, double danglingValSum, int numEntries,
+ *   int offset, int length, int flags,
+ *   DENSE:  double[length] ranks
+ *   SPARSE: int[numEntries] urls (ascending), double[numEntries] ranks
+ *
+ * flags is 0 for partial ranks and RESIDUAL for the residual pushes of
+ * the incremental mode (see ResidualPush), which the combiner adds up as
+ * they are.
+ *
+ * A partial vector of one map task usually touches a small part of the
+ * urls; getCompactBytes() picks whichever form is smaller, every url left
+ * out of a SPARSE vector being 0.
+ *
+ * The reduce and combine tasks never decode a whole value: they read the
+ * header with numUrlsOf()/offsetOf()/lengthOf()/danglingValSumOf() and add
+ * the ranks straight out of the serialized bytes with addTo(), whatever the
+ * form.
+ */
+
+public class RankVector {
+
+	public static final int DENSE = 0x52563144; // "DV1R" read little endian
+	public static final int SPARSE = 0x52563153; // "SV1R" read little endian
+
+	public static final int HEADER_SIZE = 32;
+
+	public static final int RESIDUAL = 1; // flag of residual pushes
+
+	// entries copied out of a serialized vector at a time by addTo(), small
+	// enough to stay in the L1 cache
+	private static final int BLOCK_SIZE = 1024;
+
+	public int numUrls; // number of urls of the whole vector
+	public int offset; // first url held in ranks
+	public double[] ranks;
+	public double danglingValSum;
+	public int flags;
+
+	public RankVector() {
+	}
+
+	public RankVector(int numUrls) {
+		this(new double[numUrls], 0.0);
+	}
+
+	public RankVector(double[] ranks, double danglingValSum) {
+		this.numUrls = ranks.length;
+		this.offset = 0;
+		this.ranks = ranks;
+		this.danglingValSum = danglingValSum;
+	}
+
+	// a zero slice holding the urls [offset, offset + length)
+	public RankVector(int numUrls, int offset, int length) {
+		this.numUrls = numUrls;
+		this.offset = offset;
+		this.ranks = new double[length];
+		this.danglingValSum = 0.0;
+	}
+
+	// the DENSE form
+	public byte[] getBytes() {
+		ByteBuffer buffer = header(DENSE, offset, ranks.length, ranks.length,
+				danglingValSum);
+		buffer.asDoubleBuffer().put(ranks);
+		return buffer.array();
+	}
+
+	// the smaller of the DENSE and SPARSE forms
+	public byte[] getCompactBytes() {
+		return getCompactBytes(offset, offset + ranks.length, null, 0, 0,
+				danglingValSum);
+	}
+
+	/*
+	 * The smaller of the DENSE and SPARSE forms when only the urls in
+	 * candidates (ascending) can be non-zero, e.g. the urls a map task's
+	 * partition links to. Only the candidates are scanned.
+	 */
+	public byte[] getCompactBytes(int[] candidates) {
+		return getCompactBytes(offset, offset + ranks.length, candidates, 0,
+				candidates.length, danglingValSum);
+	}
+
+	/*
+	 * The slice of the urls [from, to) in the smaller of the DENSE and
+	 * SPARSE forms, carrying the given dangling value sum. When candidates is
+	 * not null, only candidates[candFrom .. candTo) (ascending, all within
+	 * the slice) can be non-zero and only those are scanned.
+	 */
+	public byte[] getCompactBytes(int from, int to, int[] candidates,
+			int candFrom, int candTo, double sliceDanglingValSum) {
+		if (candidates == null) {
+			candFrom = from;
+			candTo = to;
+		}
+		int numEntries = 0;
+		for (int i = candFrom; i < candTo; i++) {
+			int url = candidates == null ? i : candidates[i];
+			if (ranks[url - offset] != 0.0d) {
+				numEntries++;
+			}
+		}
+		int length = to - from;
+		ByteBuffer buffer;
+		if (12L * numEntries >= 8L * length) {
+			buffer = header(DENSE, from, length, length, sliceDanglingValSum);
+			buffer.asDoubleBuffer().put(ranks, from - offset, length);
+			return buffer.array();
+		}
+		buffer = header(SPARSE, from, length, numEntries, sliceDanglingValSum);
+		IntBuffer urls = buffer.asIntBuffer();
+		buffer.position(HEADER_SIZE + 4 * numEntries);
+		DoubleBuffer values = buffer.slice().order(ByteOrder.LITTLE_ENDIAN)
+				.asDoubleBuffer();
+		for (int i = candFrom; i < candTo; i++) {
+			int url = candidates == null ? i : candidates[i];
+			double rank = ranks[url - offset];
+			if (rank != 0.0d) {
+				urls.put(url);
+				values.put(rank);
+			}
+		}
+		return buffer.array();
+	}
+
+	// a buffer for the serialized form with the header written, positioned
+	// at the first entry
+	private ByteBuffer header(int type, int sliceOffset, int sliceLength,
+			int numEntries, double sliceDanglingValSum) {
+		int size = HEADER_SIZE
+				+ (type == DENSE ? 8 * sliceLength : 12 * numEntries);
+		ByteBuffer buffer = ByteBuffer.allocate(size).order(
+				ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(type).putInt(numUrls).putDouble(sliceDanglingValSum);
+		buffer.putInt(numEntries).putInt(sliceOffset).putInt(sliceLength)
+				.putInt(flags);
+		return buffer;
+	}
+
+	public void fromBytes(byte[] bytes) throws SerializationException {
+		numUrls = numUrlsOf(bytes);
+		offset = offsetOf(bytes);
+		danglingValSum = danglingValSumOf(bytes);
+		flags = flagsOf(bytes);
+		int length = lengthOf(bytes);
+		// reuse the rank array when the vector is decoded every iteration
+		if (ranks == null || ranks.length != length) {
+			ranks = new double[length];
+		}
+		if (typeOf(bytes) == DENSE) {
+			ByteBuffer.wrap(bytes, HEADER_SIZE, 8 * length).slice()
+					.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(ranks);
+		} else {
+			Arrays.fill(ranks, 0.0d);
+			addTo(bytes, ranks, offset);
+		}
+	}
+
+	public static int typeOf(byte[] bytes) throws SerializationException {
+		int type = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN)
+				.getInt(0);
+		if (type != DENSE && type != SPARSE) {
+			throw new SerializationException("Not a serialized rank vector");
+		}
+		return type;
+	}
+
+	public static int numUrlsOf(byte[] bytes) throws SerializationException {
+		typeOf(bytes);
+		return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).getInt(4);
+	}
+
+	public static double danglingValSumOf(byte[] bytes) {
+		return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).getDouble(8);
+	}
+
+	public static int flagsOf(byte[] bytes) {
+		return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).getInt(28);
+	}
+
+	public static int offsetOf(byte[] bytes) {
+		return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).getInt(20);
+	}
+
+	public static int lengthOf(byte[] bytes) {
+		return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).getInt(24);
+	}
+
+	/*
+	 * The urls a serialized SPARSE vector or slice holds entries for,
+	 * ascending; null for a DENSE one, which holds every url of its range.
+	 */
+	public static int[] urlsOf(byte[] bytes) throws SerializationException {
+		if (typeOf(bytes) == DENSE) {
+			return null;
+		}
+		int numEntries = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN)
+				.getInt(16);
+		int[] urls = new int[numEntries];
+		ByteBuffer.wrap(bytes, HEADER_SIZE, 4 * numEntries).slice()
+				.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(urls);
+		return urls;
+	}
+
+	/*
+	 * Add the ranks of a serialized vector or slice of either form into sum,
+	 * where sum[i] is the rank of url sumOffset + i. The bytes are wrapped,
+	 * not copied: entries are moved through small block buffers so the
+	 * adding loops work on plain arrays.
+	 */
+	public static void addTo(byte[] bytes, double[] sum, int sumOffset)
+			throws SerializationException {
+		int type = typeOf(bytes);
+		ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		int numEntries = buffer.getInt(16);
+		int offset = buffer.getInt(20);
+		int length = buffer.getInt(24);
+		if (offset < sumOffset || offset + length > sumOffset + sum.length) {
+			throw new SerializationException("Rank vector slice of urls "
+					+ offset + ".." + (offset + length) + " added to a sum of "
+					+ sumOffset + ".." + (sumOffset + sum.length));
+		}
+		if (type == DENSE) {
+			DoubleBuffer ranks = ByteBuffer.wrap(bytes, HEADER_SIZE, 8 * length)
+					.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+			double[] block = new double[Math.min(BLOCK_SIZE, length)];
+			int base = offset - sumOffset;
+			for (int start = 0; start < length; start += BLOCK_SIZE) {
+				int blockLength = Math.min(BLOCK_SIZE, length - start);
+				ranks.get(block, 0, blockLength);
+				for (int i = 0; i < blockLength; i++) {
+					sum[base + start + i] += block[i];
+				}
+			}
+			return;
+		}
+		IntBuffer urls = ByteBuffer.wrap(bytes, HEADER_SIZE, 4 * numEntries)
+				.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+		DoubleBuffer ranks = ByteBuffer.wrap(bytes,
+				HEADER_SIZE + 4 * numEntries, 8 * numEntries).slice()
+				.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+		int[] urlBlock = new int[Math.min(BLOCK_SIZE, numEntries)];
+		double[] block = new double[urlBlock.length];
+		for (int start = 0; start < numEntries; start += BLOCK_SIZE) {
+			int blockLength = Math.min(BLOCK_SIZE, numEntries - start);
+			urls.get(urlBlock, 0, blockLength);
+			ranks.get(block, 0, blockLength);
+			for (int i = 0; i < blockLength; i++) {
+				sum[urlBlock[i] - sumOffset] += block[i];
+			}
+		}
+	}
+
+	public DoubleVectorData toDoubleVectorData() {
+		double[][] data = new double[ranks.length][1];
+		for (int i = 0; i < ranks.length; i++) {
+			data[i][0] = ranks[i];
+		}
+		return new DoubleVectorData(data, ranks.length, 1);
+	}
+
+	public static RankVector fromDoubleVectorData(DoubleVectorData dvd) {
+		int numData = dvd.getNumData();
+		double[][] data = dvd.getData();
+		double[] ranks = new double[numData];
+		for (int i = 0; i < numData; i++) {
+			ranks[i] = data[i][0];
+		}
+		return new RankVector(ranks, 0.0);
+	}
+}
@@ -0,0 +1,202 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+package cgl.imr.samples.pagerank;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/*
+ * Binary rank vector file, used for the driver's checkpoints and the
+ * binary output (see RankOutputWriter). All values are little endian.
+ *
+ *   header   int magic, int version, int numUrls, int iteration,
+ *            double uniformRank, double danglingValSum
+ *   ranks    double[numUrls]
+ *
+ * iteration is the number of iterations the ranks are the result of and
+ * uniformRank their teleport and dangling term. The file is written
+ * sequentially through a FileChannel under a temporary name and then
+ * renamed over the old one, so a reader never sees half a file.
+ */
+
+public class RankVectorFile {
+
+	public static final int MAGIC = 0x5256314B; // "KV1R" read little endian
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 32;
+
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	public int iteration;
+	public double uniformRank;
+	public RankVector ranks;
+
+	public static boolean isRankVectorFile(String fileName) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		try {
+			if (file.length() < HEADER_SIZE) {
+				return false;
+			}
+			return Integer.reverseBytes(file.readInt()) == MAGIC;
+		} finally {
+			file.close();
+		}
+	}
+
+	public static RankVectorFile read(String fileName) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(
+					ByteOrder.LITTLE_ENDIAN);
+			buffer.limit(HEADER_SIZE);
+			fill(channel, buffer);
+			if (buffer.getInt() != MAGIC) {
+				throw new IOException(fileName + " is not a rank vector file");
+			}
+			int version = buffer.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported rank vector file version "
+						+ version + " in " + fileName);
+			}
+			RankVectorFile vectorFile = new RankVectorFile();
+			int numUrls = buffer.getInt();
+			vectorFile.iteration = buffer.getInt();
+			vectorFile.uniformRank = buffer.getDouble();
+			double danglingValSum = buffer.getDouble();
+			if (channel.size() != HEADER_SIZE + 8L * numUrls) {
+				throw new IOException(fileName + " holds "
+						+ (channel.size() - HEADER_SIZE) + " bytes of ranks, expected "
+						+ 8L * numUrls);
+			}
+			double[] ranks = new double[numUrls];
+			int done = 0;
+			while (done < numUrls) {
+				int count = Math.min(numUrls - done, BUFFER_SIZE / 8);
+				buffer.clear();
+				buffer.limit(8 * count);
+				fill(channel, buffer);
+				buffer.asDoubleBuffer().get(ranks, done, count);
+				done += count;
+			}
+			vectorFile.ranks = new RankVector(ranks, danglingValSum);
+			return vectorFile;
+		} finally {
+			file.close();
+		}
+	}
+
+	public static void write(String fileName, RankVector ranks, int iteration,
+			double uniformRank) throws IOException {
+		File target = new File(fileName);
+		File temporary = new File(fileName + ".tmp");
+		RandomAccessFile file = new RandomAccessFile(temporary, "rw");
+		try {
+			file.setLength(0);
+			FileChannel channel = file.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(
+					ByteOrder.LITTLE_ENDIAN);
+			putHeader(buffer, ranks, iteration, uniformRank);
+			double[] values = ranks.ranks;
+			int done = 0;
+			while (done < values.length) {
+				int count = Math.min(values.length - done, buffer.remaining() / 8);
+				DoubleBuffer doubles = buffer.asDoubleBuffer();
+				doubles.put(values, done, count);
+				buffer.position(buffer.position() + 8 * count);
+				done += count;
+				flush(channel, buffer);
+			}
+			flush(channel, buffer);
+			channel.force(false);
+		} finally {
+			file.close();
+		}
+		Files.move(temporary.toPath(), target.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	// write the header for the given vector at the position of buffer
+	public static void putHeader(ByteBuffer buffer, RankVector ranks,
+			int iteration, double uniformRank) {
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(ranks.numUrls)
+				.putInt(iteration).putDouble(uniformRank)
+				.putDouble(ranks.danglingValSum);
+	}
+
+	private static void fill(FileChannel channel, ByteBuffer buffer)
+			throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw new IOException("Unexpected end of rank vector file");
+			}
+		}
+		buffer.flip();
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer)
+			throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
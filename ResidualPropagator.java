@@ -0,0 +1,255 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+package cgl.imr.samples.pagerank;
+
+import java.util.Arrays;
+
+/*
+ * Driver side of the incremental mode: push style residual propagation
+ * from the ranks of the graph before a batch of link changes.
+ *
+ * With x the ranks before the change and x' the ranks after it, the
+ * estimate p (starting at x) and the residual r keep
+ *
+ *   x' = p + (I - 0.85 M')^-1 r
+ *
+ * where M' is the changed link matrix with dangling urls linking to every
+ * url. The residual starts as 0.85 (M' - M) x, the part of x the changed
+ * urls now send elsewhere, which the map tasks compute from the changed
+ * rows. Each round moves every residual entry above the threshold into the
+ * estimate and has the map tasks push it on, adding 0.85 r_u / outDegree
+ * to the residual of every target of u.
+ *
+ * What a dangling url would spread over every url is kept as one uniform
+ * scalar instead: (I - 0.85 M')^-1 applied to a constant vector is a
+ * multiple of x' itself, so it only scales the result and is absorbed when
+ * the estimate is finally scaled back to a sum of one. The residual proper
+ * stays sparse: only the urls it is not 0 at are listed and visited, so a
+ * round costs the driver the entries pushed and returned, not numUrls.
+ *
+ * A full iteration broadcasts and combines numUrls entries. The rounds
+ * count the entries they push and get back against that, and the
+ * propagation gives up once they add up to more than maxWork full
+ * iterations; from then on full iterations are cheaper.
+ *
+ * The map tasks also report what the pushed residual of dangling rows
+ * adds to the dangling value sum; the first push, along the new rows and
+ * negated along the old ones, reports how the change moves the dangling
+ * sum of x. Added up they keep the dangling sum of the estimate, which
+ * the uniform term of the result comes from.
+ */
+
+public class ResidualPropagator {
+
+	private final int numUrls;
+	private final double[] ranks; // the estimate p
+	private final double[] residuals; // r, without the uniform part
+	private final boolean[] listed; // whether a url is in activeUrls
+	private int[] activeUrls = new int[1024]; // the urls r may be non-zero at
+	private int numActive;
+	private final double tolerance; // L1 norm the residual may be left with
+	private final double threshold; // smallest residual entry pushed
+	private final long maxWork; // entries the rounds may push and get back
+	private long work; // entries pushed and got back so far
+	private double uniformResidual; // the uniform part of r, per url
+	private double danglingValSum; // of the estimate, in the changed graph
+	private boolean tooLarge; // the rounds cost more than maxWork
+
+	/*
+	 * @parameter ranks - the ranks before the change, updated in place
+	 * 
+	 * @parameter danglingValSum - the dangling value sum of ranks before the
+	 * change
+	 * 
+	 * @parameter tolerance - the L1 norm the residual may be left with,
+	 * until then the entries above tolerance / numUrls are pushed
+	 * 
+	 * @parameter maxWork - give up once the rounds have pushed and got back
+	 * as many entries as this many full iterations broadcast and combine
+	 */
+	public ResidualPropagator(double[] ranks, double danglingValSum,
+			double tolerance, double maxWork) {
+		this.numUrls = ranks.length;
+		this.ranks = ranks;
+		this.danglingValSum = danglingValSum;
+		this.residuals = new double[numUrls];
+		this.listed = new boolean[numUrls];
+		this.tolerance = tolerance;
+		this.threshold = tolerance / numUrls;
+		this.maxWork = (long) (maxWork * 2 * numUrls);
+	}
+
+	/*
+	 * Add the residual the map tasks pushed in the last round; urls lists
+	 * the urls of pushed it holds sums for, see
+	 * PageRankCombiner2.getResidualUrls().
+	 */
+	public void add(RankVector pushed, int[] urls) {
+		double[] sums = pushed.ranks;
+		for (int i = 0; i < urls.length; i++) {
+			int url = urls[i];
+			residuals[url] += .85 * sums[url];
+			if (!listed[url]) {
+				listed[url] = true;
+				if (numActive == activeUrls.length) {
+					activeUrls = Arrays.copyOf(activeUrls, 2 * numActive);
+				}
+				activeUrls[numActive++] = url;
+			}
+		}
+		work += urls.length;
+		uniformResidual += .85 * pushed.danglingValSum / numUrls;
+		danglingValSum += pushed.danglingValSum;
+	}
+
+	/*
+	 * Move the residual entries above the threshold into the estimate and
+	 * return them for the map tasks to push; null when the residual is down
+	 * to the tolerance or when the rounds have cost too much already, see
+	 * isTooLarge().
+	 */
+	public ResidualPush next() {
+		int count = 0;
+		double norm = 0.0d;
+		for (int a = 0; a < numActive; a++) {
+			double residual = Math.abs(residuals[activeUrls[a]]);
+			if (residual > threshold) {
+				count++;
+			}
+			norm += residual;
+		}
+		if (norm <= tolerance) {
+			return null;
+		}
+		if (work + count > maxWork) {
+			tooLarge = true;
+			return null;
+		}
+		work += count;
+		ResidualPush push = new ResidualPush();
+		push.numUrls = numUrls;
+		push.numEntries = count;
+		push.urls = new int[count];
+		push.residuals = new double[count];
+		// the pushed urls leave the list
+		count = 0;
+		int kept = 0;
+		for (int a = 0; a < numActive; a++) {
+			int url = activeUrls[a];
+			double residual = residuals[url];
+			if (Math.abs(residual) > threshold) {
+				push.urls[count] = url;
+				push.residuals[count++] = residual;
+				ranks[url] += residual;
+				residuals[url] = 0.0d;
+				listed[url] = false;
+			} else {
+				activeUrls[kept++] = url;
+			}
+		}
+		numActive = kept;
+		return push;
+	}
+
+	public boolean isTooLarge() {
+		return tooLarge;
+	}
+
+	// entries pushed and got back so far, a full iteration counting 2 numUrls
+	public long getWork() {
+		return work;
+	}
+
+	// the uniform part of the residual, per url
+	public double getUniformResidual() {
+		return uniformResidual;
+	}
+
+	// the dangling value sum of the estimate, scaled along by finish()
+	public double getDanglingValSum() {
+		return danglingValSum;
+	}
+
+	// L1 norm of the residual left, without the uniform part
+	public double getResidualNorm() {
+		double norm = 0.0d;
+		for (int a = 0; a < numActive; a++) {
+			norm += Math.abs(residuals[activeUrls[a]]);
+		}
+		return norm;
+	}
+
+	/*
+	 * Add the residual left to the estimate once and scale it to a sum of
+	 * one, in place in the ranks given to the constructor. After giving up
+	 * this is where the full iterations start from. The residual left is
+	 * below the threshold and not pushed, its share of the dangling sum is
+	 * left out.
+	 */
+	public void finish() {
+		for (int a = 0; a < numActive; a++) {
+			int url = activeUrls[a];
+			ranks[url] += residuals[url];
+			residuals[url] = 0.0d;
+			listed[url] = false;
+		}
+		numActive = 0;
+		double sum = 0.0d;
+		for (int i = 0; i < numUrls; i++) {
+			sum += ranks[i];
+		}
+		for (int i = 0; i < numUrls; i++) {
+			ranks[i] /= sum;
+		}
+		danglingValSum /= sum;
+	}
+}
@@ -0,0 +1,298 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+package cgl.imr.samples.pagerank;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import cgl.imr.base.SerializationException;
+
+/*
+ * Broadcast of the incremental mode, sent instead of the ranks. Little
+ * endian:
+ *
+ *   int magic, int numUrls, int numEntries, int numInserted,
+ *   int numDeleted, int 0,
+ *   int[numEntries] urls, double[numEntries] residuals,
+ *   int[numInserted] from, int[numInserted] to,
+ *   int[numDeleted] from, int[numDeleted] to, int[numDeleted] line
+ *
+ * Every map task pushes the residual of each listed url that is a row of
+ * its partition along the row's out-links, residual / outDegree to every
+ * target, and emits the sums as a RESIDUAL RankVector; a dangling row adds
+ * its residual to the dangling value sum instead. The first broadcast also
+ * carries the link changes, read from a delta file with one "+ from to"
+ * (inserted) or "- from to" (deleted) line per link. A link may not be
+ * both inserted and deleted in one file, so the order of the lines does
+ * not matter; the line of each deletion goes along so that a map task can
+ * name it when the link is not there. The map tasks apply the changes to
+ * their rows, then push the residual of each changed url along the
+ * new row and, negated, along the old one: with the ranks from before the
+ * change as residuals, that is how much the change moves their
+ * contributions.
+ */
+
+public class ResidualPush {
+
+	public static final int MAGIC = 0x52563150; // "PV1R" read little endian
+	public static final int HEADER_SIZE = 24;
+
+	private static final int BLOCK_SIZE = 1 << 20;
+
+	public int numUrls;
+	public int numEntries;
+	public int[] urls = new int[0];
+	public double[] residuals = new double[0];
+	public int[] insertedFrom = new int[0];
+	public int[] insertedTo = new int[0];
+	public int[] deletedFrom = new int[0];
+	public int[] deletedTo = new int[0];
+	public int[] deletedLines = new int[0]; // line of each deletion in the file
+
+	public static boolean isResidualPush(byte[] bytes) {
+		return bytes.length >= HEADER_SIZE
+				&& ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN)
+						.getInt(0) == MAGIC;
+	}
+
+	public boolean hasEdges() {
+		return insertedFrom.length + deletedFrom.length > 0;
+	}
+
+	// the distinct urls whose out-links change, ascending
+	public int[] changedUrls() {
+		int[] changed = new int[insertedFrom.length + deletedFrom.length];
+		System.arraycopy(insertedFrom, 0, changed, 0, insertedFrom.length);
+		System.arraycopy(deletedFrom, 0, changed, insertedFrom.length,
+				deletedFrom.length);
+		Arrays.sort(changed);
+		int count = 0;
+		for (int i = 0; i < changed.length; i++) {
+			if (count == 0 || changed[count - 1] != changed[i]) {
+				changed[count++] = changed[i];
+			}
+		}
+		return Arrays.copyOf(changed, count);
+	}
+
+	public byte[] getBytes() {
+		ByteBuffer buffer = ByteBuffer.allocate(
+				HEADER_SIZE + 12 * numEntries + 8 * insertedFrom.length + 12
+						* deletedFrom.length).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC).putInt(numUrls).putInt(numEntries)
+				.putInt(insertedFrom.length).putInt(deletedFrom.length).putInt(0);
+		buffer.asIntBuffer().put(urls, 0, numEntries);
+		buffer.position(buffer.position() + 4 * numEntries);
+		buffer.asDoubleBuffer().put(residuals, 0, numEntries);
+		buffer.position(buffer.position() + 8 * numEntries);
+		buffer.asIntBuffer().put(insertedFrom).put(insertedTo).put(deletedFrom)
+				.put(deletedTo).put(deletedLines);
+		return buffer.array();
+	}
+
+	public void fromBytes(byte[] bytes) throws SerializationException {
+		if (!isResidualPush(bytes)) {
+			throw new SerializationException("Not a residual push");
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.getInt();
+		numUrls = buffer.getInt();
+		numEntries = buffer.getInt();
+		int numInserted = buffer.getInt();
+		int numDeleted = buffer.getInt();
+		buffer.getInt();
+		urls = new int[numEntries];
+		residuals = new double[numEntries];
+		buffer.asIntBuffer().get(urls);
+		buffer.position(buffer.position() + 4 * numEntries);
+		buffer.asDoubleBuffer().get(residuals);
+		buffer.position(buffer.position() + 8 * numEntries);
+		insertedFrom = new int[numInserted];
+		insertedTo = new int[numInserted];
+		deletedFrom = new int[numDeleted];
+		deletedTo = new int[numDeleted];
+		deletedLines = new int[numDeleted];
+		buffer.asIntBuffer().get(insertedFrom).get(insertedTo).get(deletedFrom)
+				.get(deletedTo).get(deletedLines);
+	}
+
+	/*
+	 * A push of no residuals carrying the link changes of a delta file,
+	 * decoded straight from the bytes like PartitionTextParser does.
+	 */
+	public static ResidualPush readDeltaFile(String fileName, int numUrls)
+			throws IOException {
+		FileInputStream stream = new FileInputStream(fileName);
+		try {
+			FileChannel channel = stream.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+			byte[] bytes = buffer.array();
+			DeltaParser parser = new DeltaParser(fileName, numUrls);
+			while (channel.read(buffer) != -1) {
+				int length = buffer.position();
+				for (int i = 0; i < length; i++) {
+					parser.accept(bytes[i]);
+				}
+				buffer.clear();
+			}
+			parser.accept('\n');
+			ResidualPush push = new ResidualPush();
+			push.numUrls = numUrls;
+			push.insertedFrom = Arrays.copyOf(parser.links[0], parser.numLinks[0]);
+			push.insertedTo = Arrays.copyOf(parser.links[1], parser.numLinks[0]);
+			push.deletedFrom = Arrays.copyOf(parser.links[2], parser.numLinks[1]);
+			push.deletedTo = Arrays.copyOf(parser.links[3], parser.numLinks[1]);
+			push.deletedLines = Arrays.copyOf(parser.deletedLines,
+					parser.numLinks[1]);
+			return push;
+		} finally {
+			stream.close();
+		}
+	}
+
+	// the state of the delta file decoder between bytes
+	private static class DeltaParser {
+		private final String fileName;
+		private final int numUrls;
+		// inserted from, inserted to, deleted from, deleted to
+		private int[][] links = { new int[16], new int[16], new int[16],
+				new int[16] };
+		private int[] numLinks = new int[2]; // inserted, deleted
+		private int[] deletedLines = new int[16];
+		// from << 32 | to of every link seen, to the line that inserts
+		// (positive) or deletes it (negative)
+		private Map<Long, Integer> lines = new HashMap<Long, Integer>();
+		private int line = 1;
+		private int kind = -1; // 0 inserted, 1 deleted, -1 not seen yet
+		private int field = 0; // numbers seen on the line
+		private int from;
+		private long value;
+		private boolean inNumber;
+
+		DeltaParser(String fileName, int numUrls) {
+			this.fileName = fileName;
+			this.numUrls = numUrls;
+		}
+
+		void accept(int c) throws IOException {
+			if (c >= '0' && c <= '9' && kind >= 0) {
+				value = value * 10 + (c - '0');
+				if (value >= numUrls) {
+					throw error("url out of range");
+				}
+				inNumber = true;
+				return;
+			}
+			if ((c == '+' || c == '-') && kind < 0 && field == 0) {
+				kind = c == '+' ? 0 : 1;
+				return;
+			}
+			if (c != ' ' && c != '\t' && c != '\r' && c != '\n') {
+				throw error("unexpected character '" + (char) c + "'");
+			}
+			if (inNumber) {
+				if (field == 0) {
+					from = (int) value;
+				} else if (field == 1) {
+					add(from, (int) value);
+				} else {
+					throw error("more than two urls");
+				}
+				field++;
+				value = 0;
+				inNumber = false;
+			}
+			if (c == '\n') {
+				if (kind >= 0 && field != 2) {
+					throw error("expected \"+ from to\" or \"- from to\"");
+				}
+				kind = -1;
+				field = 0;
+				line++;
+			}
+		}
+
+		private void add(int from, int to) throws IOException {
+			Integer seen = lines.put(((long) from << 32) | to,
+					kind == 0 ? line : -line);
+			if (seen != null && (seen > 0) != (kind == 0)) {
+				throw error((kind == 0 ? "inserts" : "deletes") + " the link "
+						+ from + " -> " + to + " that line " + Math.abs(seen)
+						+ (seen > 0 ? " inserts" : " deletes"));
+			}
+			int n = numLinks[kind];
+			if (n == links[2 * kind].length) {
+				links[2 * kind] = Arrays.copyOf(links[2 * kind], 2 * n);
+				links[2 * kind + 1] = Arrays.copyOf(links[2 * kind + 1], 2 * n);
+				if (kind == 1) {
+					deletedLines = Arrays.copyOf(deletedLines, 2 * n);
+				}
+			}
+			links[2 * kind][n] = from;
+			links[2 * kind + 1][n] = to;
+			if (kind == 1) {
+				deletedLines[n] = line;
+			}
+			numLinks[kind]++;
+		}
+
+		private IOException error(String message) {
+			return new IOException(fileName + ", line " + line + ": " + message);
+		}
+	}
+}
@@ -0,0 +1,209 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+package cgl.imr.samples.pagerank;
+
+/*
+ * The k urls with the highest ranks, kept in a bounded min-heap of
+ * primitive arrays: the root is the weakest of the current top k, so each
+ * offer is one comparison unless it displaces the root. Equal ranks are
+ * ordered by ascending url, which makes the selection independent of the
+ * order of the offers; selectors filled from disjoint url ranges can be
+ * merged with addAll(), which is how select() spreads a whole vector over
+ * threads.
+ */
+
+public class TopKSelector {
+
+	private final int k;
+	private final double[] ranks;
+	private final int[] urls;
+	private int size;
+	private boolean sorted;
+
+	public TopKSelector(int k) {
+		this.k = k;
+		this.ranks = new double[k];
+		this.urls = new int[k];
+	}
+
+	/*
+	 * The top k of ranks, sorted: every chunk of the urls is run through a
+	 * selector of its own on the shared pool and the selectors are merged in
+	 * chunk order. No selector holds more entries than it can get.
+	 */
+	public static TopKSelector select(final double[] ranks, final int k,
+			int numChunks) {
+		final int[] bounds = ParallelRanges.split(ranks.length,
+				Math.max(1, Math.min(numChunks, ranks.length)));
+		final TopKSelector[] chunkSelectors = new TopKSelector[bounds.length - 1];
+		ParallelRanges.run(bounds, new ParallelRanges.Body() {
+			public void run(int chunk, int from, int to) {
+				TopKSelector selector = new TopKSelector(Math.min(k, to - from));
+				for (int i = from; i < to; i++) {
+					selector.offer(i, ranks[i]);
+				}
+				chunkSelectors[chunk] = selector;
+			}
+		});
+		TopKSelector top = new TopKSelector(Math.min(k, ranks.length));
+		for (int c = 0; c < chunkSelectors.length; c++) {
+			top.addAll(chunkSelectors[c]);
+		}
+		top.sort();
+		return top;
+	}
+
+	public void offer(int url, double rank) {
+		if (size < k) {
+			ranks[size] = rank;
+			urls[size] = url;
+			siftUp(size++);
+		} else if (k > 0 && weaker(0, url, rank)) {
+			ranks[0] = rank;
+			urls[0] = url;
+			siftDown(0, size);
+		}
+	}
+
+	public void addAll(TopKSelector other) {
+		for (int i = 0; i < other.size; i++) {
+			offer(other.urls[i], other.ranks[i]);
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		size = 0;
+		sorted = false;
+	}
+
+	/*
+	 * Order the selection by descending rank (heap sort); no more offers
+	 * until clear().
+	 */
+	public void sort() {
+		if (sorted) {
+			return;
+		}
+		for (int end = size - 1; end > 0; end--) {
+			swap(0, end);
+			siftDown(0, end);
+		}
+		sorted = true;
+	}
+
+	// the selected urls, by descending rank after sort()
+	public int[] urls() {
+		int[] copy = new int[size];
+		System.arraycopy(urls, 0, copy, 0, size);
+		return copy;
+	}
+
+	public double[] ranks() {
+		double[] copy = new double[size];
+		System.arraycopy(ranks, 0, copy, 0, size);
+		return copy;
+	}
+
+	public int urlAt(int i) {
+		return urls[i];
+	}
+
+	public double rankAt(int i) {
+		return ranks[i];
+	}
+
+	// entry i ranks below (url, rank)
+	private boolean weaker(int i, int url, double rank) {
+		return ranks[i] < rank || (ranks[i] == rank && urls[i] > url);
+	}
+
+	private void siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!weaker(i, urls[parent], ranks[parent])) {
+				break;
+			}
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i, int end) {
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= end) {
+				break;
+			}
+			if (child + 1 < end && weaker(child + 1, urls[child], ranks[child])) {
+				child++;
+			}
+			if (!weaker(child, urls[i], ranks[i])) {
+				break;
+			}
+			swap(i, child);
+			i = child;
+		}
+	}
+
+	private void swap(int i, int j) {
+		double rank = ranks[i];
+		ranks[i] = ranks[j];
+		ranks[j] = rank;
+		int url = urls[i];
+		urls[i] = urls[j];
+		urls[j] = url;
+	}
+}
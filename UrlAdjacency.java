@@ -0,0 +1,530 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.samples.pagerank;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+ * Adjacency matrix of one url partition, stored in compressed sparse row
+ * (CSR) layout. Row i is the i-th url of the partition file: its global
+ * index is urls[i] and its out-links are targets[offsets[i]] up to (but not
+ * including) targets[offsets[i + 1]]. Everything is held in primitive
+ * arrays so a resident partition costs 4 bytes per edge and no per-url
+ * objects.
+ *
+ * Rows are appended with addRow()/addTarget() and the structure is sealed
+ * with finish(), which computes the per-row 1/outDegree and the list of
+ * dangling urls.
+ */
+
+public class UrlAdjacency {
+
+	public int numRows; // number of urls of the partition
+	public int numEdges; // number of out-links of the partition
+	public int[] urls; // global "from" index of each row
+	public int[] offsets; // row i spans targets[offsets[i] .. offsets[i+1])
+	public int[] targets; // global "to" index of each out-link
+	public double[] invOutDegree; // 1 / out-degree of each row, 0 if dangling
+	public int[] danglingUrls; // global index of the urls without out-links
+
+	// in-link (transposed) view used by the pull kernel, see buildInLinks()
+	public int numInUrls; // number of distinct urls linked from the partition
+	public int[] inUrls; // global index of each linked url, ascending
+	public int[] inOffsets; // in-links of inUrls[d] span inRows[inOffsets[d] .. inOffsets[d+1])
+	public int[] inRows; // row of the source of each in-link
+
+	// links between rows of the partition, see buildLocalInLinks()
+	public int[] localInOffsets; // local in-links of row i span localInRows[localInOffsets[i] .. localInOffsets[i+1])
+	public int[] localInRows; // row of the source of each local in-link
+
+	private long[] rowIndex; // url << 32 | row, sorted, see rowOf()
+
+	public UrlAdjacency(int numRows, int numEdgesHint) {
+		this.urls = new int[numRows];
+		this.offsets = new int[numRows + 1];
+		this.targets = new int[Math.max(numEdgesHint, 16)];
+		this.numRows = 0;
+		this.numEdges = 0;
+	}
+
+	// wrap already built CSR arrays, e.g. the sections of a binary partition file
+	public UrlAdjacency(int[] urls, int[] offsets, int[] targets) {
+		this.urls = urls;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.numRows = urls.length;
+		this.numEdges = targets.length;
+	}
+
+	// start a new row for the url with the given global index
+	public void addRow(int url) {
+		if (numRows == urls.length) {
+			urls = grow(urls, urls.length + 1);
+			offsets = Arrays.copyOf(offsets, urls.length + 1);
+		}
+		urls[numRows] = url;
+		numRows++;
+		offsets[numRows] = numEdges;
+	}
+
+	// append an out-link to the row added last
+	public void addTarget(int url) {
+		if (numEdges == targets.length) {
+			targets = grow(targets, numEdges + 1);
+		}
+		targets[numEdges++] = url;
+		offsets[numRows] = numEdges;
+	}
+
+	public int outDegree(int row) {
+		return offsets[row + 1] - offsets[row];
+	}
+
+	/*
+	 * Trim the arrays to their final size and precompute the values the map
+	 * kernel needs on every iteration.
+	 */
+	public void finish() {
+		if (urls.length != numRows) {
+			urls = Arrays.copyOf(urls, numRows);
+		}
+		if (offsets.length != numRows + 1) {
+			offsets = Arrays.copyOf(offsets, numRows + 1);
+		}
+		if (targets.length != numEdges) {
+			targets = Arrays.copyOf(targets, numEdges);
+		}
+		invOutDegree = new double[numRows];
+		int numDangling = 0;
+		for (int i = 0; i < numRows; i++) {
+			int degree = outDegree(i);
+			if (degree == 0) {
+				numDangling++;
+			} else {
+				invOutDegree[i] = 1.0d / degree;
+			}
+		}
+		danglingUrls = new int[numDangling];
+		numDangling = 0;
+		for (int i = 0; i < numRows; i++) {
+			if (offsets[i] == offsets[i + 1]) {
+				danglingUrls[numDangling++] = urls[i];
+			}
+		}
+	}
+
+	/*
+	 * Push kernel: scatter rank / outDegree of each row in [fromRow, toRow)
+	 * to its out-links. ranks and contributions are indexed by global url.
+	 */
+	public void push(double[] ranks, double[] contributions, int fromRow,
+			int toRow) {
+		for (int i = fromRow; i < toRow; i++) {
+			int end = offsets[i + 1];
+			double contribution = ranks[urls[i]] * invOutDegree[i];
+			for (int j = offsets[i]; j < end; j++) {
+				contributions[targets[j]] += contribution;
+			}
+		}
+	}
+
+	/*
+	 * The position in urls (ascending, holding every target) of the target
+	 * of each out-link, for pushing into vectors laid out like urls.
+	 */
+	public int[] targetPositions(int[] urls) {
+		int[] positions = new int[numEdges];
+		for (int j = 0; j < numEdges; j++) {
+			positions[j] = Arrays.binarySearch(urls, targets[j]);
+		}
+		return positions;
+	}
+
+	// push kernel into contributions indexed by the target positions
+	public void push(double[] ranks, double[] contributions, int[] positions,
+			int fromRow, int toRow) {
+		for (int i = fromRow; i < toRow; i++) {
+			int end = offsets[i + 1];
+			double contribution = ranks[urls[i]] * invOutDegree[i];
+			for (int j = offsets[i]; j < end; j++) {
+				contributions[positions[j]] += contribution;
+			}
+		}
+	}
+
+	/*
+	 * Build the transposed view of the partition: for every url that some
+	 * row links to, the rows that link to it. A counting sort over the
+	 * targets keeps the rows of each url in ascending order, so the pull
+	 * kernel sums them in a fixed order.
+	 */
+	public void buildInLinks() {
+		int maxUrl = -1;
+		for (int j = 0; j < numEdges; j++) {
+			maxUrl = Math.max(maxUrl, targets[j]);
+		}
+		int[] counts = new int[maxUrl + 2];
+		for (int j = 0; j < numEdges; j++) {
+			counts[targets[j] + 1]++;
+		}
+		numInUrls = 0;
+		for (int url = 0; url <= maxUrl; url++) {
+			if (counts[url + 1] > 0) {
+				numInUrls++;
+			}
+			counts[url + 1] += counts[url]; // now the start of url + 1
+		}
+		inRows = new int[numEdges];
+		for (int i = 0; i < numRows; i++) {
+			for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+				inRows[counts[targets[j]]++] = i;
+			}
+		}
+		// counts[url] is now the end of url's in-links
+		inUrls = new int[numInUrls];
+		inOffsets = new int[numInUrls + 1];
+		int d = 0;
+		int start = 0;
+		for (int url = 0; url <= maxUrl; url++) {
+			if (counts[url] > start) {
+				inUrls[d] = url;
+				inOffsets[d] = start;
+				d++;
+				start = counts[url];
+			}
+		}
+		inOffsets[numInUrls] = numEdges;
+	}
+
+	/*
+	 * The distinct urls the partition links to, ascending: the only urls a
+	 * map task's partial ranks can be non-zero for.
+	 */
+	public int[] linkedUrls() {
+		if (inUrls != null) {
+			return inUrls;
+		}
+		int maxUrl = -1;
+		for (int j = 0; j < numEdges; j++) {
+			maxUrl = Math.max(maxUrl, targets[j]);
+		}
+		long[] linked = new long[(maxUrl >> 6) + 1];
+		for (int j = 0; j < numEdges; j++) {
+			linked[targets[j] >> 6] |= 1L << targets[j];
+		}
+		int count = 0;
+		for (int w = 0; w < linked.length; w++) {
+			count += Long.bitCount(linked[w]);
+		}
+		int[] urls = new int[count];
+		count = 0;
+		for (int w = 0; w < linked.length; w++) {
+			long bits = linked[w];
+			while (bits != 0) {
+				urls[count++] = (w << 6) + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+			}
+		}
+		return urls;
+	}
+
+	// rank / outDegree of each row in [fromRow, toRow), what the row pushes
+	// along every out-link
+	public void scale(double[] ranks, double[] scaled, int fromRow, int toRow) {
+		for (int i = fromRow; i < toRow; i++) {
+			scaled[i] = ranks[urls[i]] * invOutDegree[i];
+		}
+	}
+
+	/*
+	 * Pull kernel: every linked url in [fromIn, toIn) of inUrls gathers the
+	 * scaled ranks of its in-link rows. Each url is written once, in
+	 * ascending order, so url ranges can run in parallel without sharing.
+	 */
+	public void pull(double[] scaled, double[] contributions, int fromIn,
+			int toIn) {
+		for (int d = fromIn; d < toIn; d++) {
+			double sum = 0.0d;
+			int end = inOffsets[d + 1];
+			for (int j = inOffsets[d]; j < end; j++) {
+				sum += scaled[inRows[j]];
+			}
+			contributions[inUrls[d]] += sum;
+		}
+	}
+
+	/*
+	 * Build, for every row, the rows of the partition that link to it. The
+	 * source rows of each row stay in ascending order.
+	 */
+	public void buildLocalInLinks() {
+		int[] targetRows = new int[numEdges]; // row of each target, -1 if outside
+		localInOffsets = new int[numRows + 1];
+		for (int j = 0; j < numEdges; j++) {
+			targetRows[j] = rowOf(targets[j]);
+			if (targetRows[j] >= 0) {
+				localInOffsets[targetRows[j] + 1]++;
+			}
+		}
+		for (int i = 0; i < numRows; i++) {
+			localInOffsets[i + 1] += localInOffsets[i];
+		}
+		localInRows = new int[localInOffsets[numRows]];
+		int[] next = Arrays.copyOf(localInOffsets, numRows);
+		for (int i = 0; i < numRows; i++) {
+			for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+				if (targetRows[j] >= 0) {
+					localInRows[next[targetRows[j]]++] = i;
+				}
+			}
+		}
+	}
+
+	// the row of the url with the given global index, -1 if it is not in the
+	// partition; the urls are sorted on the first call
+	public int rowOf(int url) {
+		if (rowIndex == null) {
+			rowIndex = new long[numRows];
+			for (int i = 0; i < numRows; i++) {
+				rowIndex[i] = ((long) urls[i] << 32) | i;
+			}
+			Arrays.sort(rowIndex);
+		}
+		// most lookups are for urls of other partitions
+		if (numRows == 0 || url < (int) (rowIndex[0] >>> 32)
+				|| url > (int) (rowIndex[numRows - 1] >>> 32)) {
+			return -1;
+		}
+		// a partition of consecutive urls is looked up directly
+		if ((int) (rowIndex[numRows - 1] >>> 32) - (int) (rowIndex[0] >>> 32)
+				== numRows - 1) {
+			return (int) rowIndex[url - (int) (rowIndex[0] >>> 32)];
+		}
+		int low = 0;
+		int high = numRows - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int middleUrl = (int) (rowIndex[middle] >>> 32);
+			if (middleUrl < url) {
+				low = middle + 1;
+			} else if (middleUrl > url) {
+				high = middle - 1;
+			} else {
+				return (int) rowIndex[middle];
+			}
+		}
+		return -1;
+	}
+
+	// a sealed copy of the partition without the rows marked removed
+	public UrlAdjacency withoutRows(boolean[] removed) {
+		int numKept = 0;
+		int numKeptEdges = 0;
+		for (int i = 0; i < numRows; i++) {
+			if (!removed[i]) {
+				numKept++;
+				numKeptEdges += offsets[i + 1] - offsets[i];
+			}
+		}
+		UrlAdjacency kept = new UrlAdjacency(numKept, numKeptEdges);
+		for (int i = 0; i < numRows; i++) {
+			if (!removed[i]) {
+				kept.addRow(urls[i]);
+				for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+					kept.addTarget(targets[j]);
+				}
+			}
+		}
+		kept.finish();
+		return kept;
+	}
+
+	/*
+	 * A sealed copy of the partition with a batch of link changes applied to
+	 * the rows it holds: each deleted link (deletedFrom[e], deletedTo[e])
+	 * drops one occurrence of the target from its row, then each inserted
+	 * link is appended to its row. Links from urls that are not rows of the
+	 * partition are skipped. The changed rows, as they were before, are
+	 * appended to previousRows, which the caller seals. A deleted link the
+	 * row does not have fails with the line of the delta file that names it,
+	 * deletedLines[e].
+	 */
+	public UrlAdjacency withEdges(int[] insertedFrom, int[] insertedTo,
+			int[] deletedFrom, int[] deletedTo, int[] deletedLines,
+			UrlAdjacency previousRows) throws IOException {
+		// row << 32 | change, the deletions numbered before the insertions,
+		// so sorting groups the changes by row, deletions first
+		long[] changes = new long[deletedFrom.length + insertedFrom.length];
+		int numChanges = 0;
+		for (int e = 0; e < deletedFrom.length; e++) {
+			int row = rowOf(deletedFrom[e]);
+			if (row >= 0) {
+				changes[numChanges++] = ((long) row << 32) | e;
+			}
+		}
+		for (int e = 0; e < insertedFrom.length; e++) {
+			int row = rowOf(insertedFrom[e]);
+			if (row >= 0) {
+				changes[numChanges++] = ((long) row << 32)
+						| (deletedFrom.length + e);
+			}
+		}
+		Arrays.sort(changes, 0, numChanges);
+		UrlAdjacency changed = new UrlAdjacency(numRows, numEdges
+				+ insertedFrom.length);
+		int c = 0;
+		for (int i = 0; i < numRows; i++) {
+			changed.addRow(urls[i]);
+			int rowStart = changed.numEdges;
+			for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+				changed.addTarget(targets[j]);
+			}
+			if (c == numChanges || (int) (changes[c] >>> 32) != i) {
+				continue;
+			}
+			previousRows.addRow(urls[i]);
+			for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+				previousRows.addTarget(targets[j]);
+			}
+			for (; c < numChanges && (int) (changes[c] >>> 32) == i; c++) {
+				int e = (int) changes[c];
+				if (e < deletedFrom.length) {
+					if (!changed.removeTarget(rowStart, deletedTo[e])) {
+						throw new IOException("Line " + deletedLines[e]
+								+ " of the graph delta deletes the link "
+								+ urls[i] + " -> " + deletedTo[e]
+								+ ", which is not in the graph");
+					}
+				} else {
+					changed.addTarget(insertedTo[e - deletedFrom.length]);
+				}
+			}
+		}
+		changed.finish();
+		return changed;
+	}
+
+	// drop the first occurrence of url from the row added last, whose
+	// targets start at rowStart; false when the row has no such target
+	private boolean removeTarget(int rowStart, int url) {
+		for (int j = rowStart; j < numEdges; j++) {
+			if (targets[j] == url) {
+				System.arraycopy(targets, j + 1, targets, j, numEdges - j - 1);
+				numEdges--;
+				offsets[numRows] = numEdges;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * One Gauss-Seidel sweep of the page rank equation restricted to the
+	 * partition: every row becomes uniform + 0.85 * (inflow from outside the
+	 * partition + rank / outDegree of its local in-link rows), using the
+	 * rows already updated in this sweep. rowRanks and inflow are indexed
+	 * by row.
+	 */
+	public void sweep(double[] rowRanks, double[] inflow, double uniform) {
+		for (int i = 0; i < numRows; i++) {
+			double sum = inflow[i];
+			int end = localInOffsets[i + 1];
+			for (int j = localInOffsets[i]; j < end; j++) {
+				int w = localInRows[j];
+				sum += rowRanks[w] * invOutDegree[w];
+			}
+			rowRanks[i] = uniform + .85 * sum;
+		}
+	}
+
+	// split the linked urls into ranges with about the same number of in-links
+	public int[] splitInUrls(int numChunks) {
+		int[] bounds = new int[numChunks + 1];
+		long work = (long) numInUrls + numEdges;
+		int d = 0;
+		for (int c = 1; c < numChunks; c++) {
+			long target = work * c / numChunks;
+			while (d < numInUrls && (long) d + inOffsets[d] < target) {
+				d++;
+			}
+			bounds[c] = d;
+		}
+		bounds[numChunks] = numInUrls;
+		return bounds;
+	}
+
+	/*
+	 * Split the rows into numChunks contiguous ranges with about the same
+	 * amount of work, counting one unit per row and one per out-link.
+	 */
+	public int[] splitRows(int numChunks) {
+		int[] bounds = new int[numChunks + 1];
+		long work = (long) numRows + numEdges;
+		int row = 0;
+		for (int c = 1; c < numChunks; c++) {
+			long target = work * c / numChunks;
+			while (row < numRows && (long) row + offsets[row] < target) {
+				row++;
+			}
+			bounds[c] = row;
+		}
+		bounds[numChunks] = numRows;
+		return bounds;
+	}
+
+	private static int[] grow(int[] array, int minLength) {
+		return Arrays.copyOf(array,
+				Math.max(minLength, array.length + (array.length >> 1)));
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+package cgl.imr.samples.pagerank;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import cgl.imr.base.SerializationException;
+
+/*
+ * Driver side of the adaptive mode. After every iteration the urls whose
+ * rank changed by no more than the threshold (relative to the rank) are
+ * frozen: from then on the driver pins them to the value they had when they
+ * froze, and the map tasks push their contribution once into a constant
+ * vector and drop their rows. The urls frozen since the last broadcast
+ * follow the payload of the next one, so the map tasks read them and the
+ * payload in place:
+ *
+ *   payload, int[numFrozen] urls, int numFrozen, int magic
+ *
+ * Every broadcast of the adaptive mode carries them, numFrozen may be 0.
+ */
+
+public class UrlFreezer {
+
+	public static final int MAGIC = 0x52563146; // "FV1R" read little endian
+
+	private static final int TRAILER_SIZE = 8;
+
+	// a rank passes through a small change whenever it turns around, so it
+	// must stay within the threshold this many iterations in a row
+	private static final int STABLE_ITERATIONS = 3;
+
+	private final double threshold;
+	private final boolean[] frozen;
+	private final byte[] stable; // consecutive iterations within the threshold
+	private int numFrozen;
+	private int[] newlyFrozen = new int[1024];
+	private int numNewlyFrozen;
+
+	public UrlFreezer(int numUrls, double threshold) {
+		this.threshold = threshold;
+		this.frozen = new boolean[numUrls];
+		this.stable = new byte[numUrls];
+	}
+
+	/*
+	 * Pin the frozen urls of next to their value in current, then freeze the
+	 * urls whose rank moved by no more than threshold * rank.
+	 * 
+	 * @return the number of urls frozen by this call
+	 */
+	public int update(double[] current, double[] next) {
+		int count = 0;
+		for (int i = 0; i < frozen.length; i++) {
+			if (frozen[i]) {
+				next[i] = current[i];
+			} else if (Math.abs(next[i] - current[i]) > threshold
+					* Math.abs(current[i])) {
+				stable[i] = 0;
+			} else if (++stable[i] == STABLE_ITERATIONS) {
+				frozen[i] = true;
+				if (numNewlyFrozen == newlyFrozen.length) {
+					newlyFrozen = Arrays.copyOf(newlyFrozen, 2 * numNewlyFrozen);
+				}
+				newlyFrozen[numNewlyFrozen++] = i;
+				count++;
+			}
+		}
+		numFrozen += count;
+		return count;
+	}
+
+	public int getNumFrozen() {
+		return numFrozen;
+	}
+
+	// append the urls frozen since the last call to the broadcast
+	public byte[] wrap(byte[] payload) {
+		ByteBuffer buffer = ByteBuffer.allocate(
+				payload.length + 4 * numNewlyFrozen + TRAILER_SIZE).order(
+				ByteOrder.LITTLE_ENDIAN);
+		buffer.put(payload);
+		buffer.asIntBuffer().put(newlyFrozen, 0, numNewlyFrozen);
+		buffer.position(payload.length + 4 * numNewlyFrozen);
+		buffer.putInt(numNewlyFrozen).putInt(MAGIC);
+		numNewlyFrozen = 0;
+		return buffer.array();
+	}
+
+	// the urls wrap() appended to a broadcast that now ends at end
+	public static int[] frozenUrlsOf(byte[] bytes, int end)
+			throws SerializationException {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		if (end < TRAILER_SIZE || buffer.getInt(end - 4) != MAGIC) {
+			throw new SerializationException("Broadcast without frozen urls");
+		}
+		int numFrozen = buffer.getInt(end - TRAILER_SIZE);
+		int start = end - TRAILER_SIZE - 4 * numFrozen;
+		if (numFrozen < 0 || start < 0) {
+			throw new SerializationException("Corrupt frozen urls");
+		}
+		int[] urls = new int[numFrozen];
+		buffer.position(start);
+		buffer.asIntBuffer().get(urls);
+		return urls;
+	}
+}